@@ -0,0 +1,103 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the rules engine. Each benchmark runs in a middlegame position
+ * reached from the start by a fixed sequence of moves, so results are comparable between runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    // An Italian game after castling on both sides: every piece type can move and some captures exist.
+    private static final String[] opening = {"e2e4", "e7e5", "g1f3", "b8c6", "f1c4", "f8c5", "c2c3", "g8f6", "d2d4", "e5d4", "e1g1", "e8g8"};
+
+    private Board board;
+    private int[] moves;
+    private int quietMove; // a legal move from the benchmark position
+    private int from;
+    private int to;
+
+    @Setup
+    public void setUp() {
+        board = new Board();
+        moves = new int[Board.maxMoves];
+        for (String move : opening) {
+            board.makeMove(find(move));
+        }
+        quietMove = find("b1d2");
+        from = Move.from(quietMove);
+        to = Move.to(quietMove);
+    }
+
+    private int find(String algebraic) {
+        int move = board.findMove(algebraic, moves);
+        if (move == Move.none) {
+            throw new IllegalStateException("No legal move " + algebraic);
+        }
+        return move;
+    }
+
+    /**
+     * Validate and play a move through the public move() API, including the game-end test, then take it back.
+     */
+    @Benchmark
+    public boolean moveAndTakeBack() {
+        boolean moved = board.move(from % 8, from / 8, to % 8, to / 8);
+        if (moved) {
+            board.unmakeMove();
+        }
+        return moved;
+    }
+
+    @Benchmark
+    public void makeAndUnmake() {
+        board.makeMove(quietMove);
+        board.unmakeMove();
+    }
+
+    @Benchmark
+    public int generateLegalMoves() {
+        return board.generateMoves(moves, true);
+    }
+
+    @Benchmark
+    public int generatePseudoLegalMoves() {
+        return board.generateMoves(moves, false);
+    }
+
+    @Benchmark
+    public int attackDetection() {
+        int attacked = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            if (board.isAttackedBy(Color.Black, sq)) {
+                attacked++;
+            }
+        }
+        return attacked;
+    }
+
+    @Benchmark
+    public long perft3() {
+        return Perft.perft(board, 3);
+    }
+
+    @Benchmark
+    public String boardAsString() {
+        return board.boardAsString();
+    }
+}
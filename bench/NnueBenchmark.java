@@ -0,0 +1,76 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the neural network evaluation, in the same position as BoardBenchmark: a move made and unmade
+ * with the accumulators updated incrementally, then evaluated, against the same with the accumulators recomputed.
+ * Run with --add-modules jdk.incubator.vector (and VectorNnueKernels compiled) to measure the SIMD kernels,
+ * and with -Dchess.nnue.scalar=true for the plain loops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class NnueBenchmark {
+
+    private static final String[] opening = {"e2e4", "e7e5", "g1f3", "b8c6", "f1c4", "f8c5", "c2c3", "g8f6", "d2d4", "e5d4", "e1g1", "e8g8"};
+
+    private Network network;
+    private Board board;
+    private int quietMove;
+
+    @Setup
+    public void setUp() {
+        network = Network.random(new Random(1), 256);
+        board = new Board();
+        board.setNetwork(network);
+        int[] moves = new int[Board.maxMoves];
+        for (String move : opening) {
+            board.makeMove(find(moves, move));
+        }
+        quietMove = find(moves, "b1d2");
+    }
+
+    private int find(int[] moves, String algebraic) {
+        int move = board.findMove(algebraic, moves);
+        if (move == Move.none) {
+            throw new IllegalStateException("No legal move " + algebraic);
+        }
+        return move;
+    }
+
+    @Benchmark
+    public int incrementalEvaluation() {
+        board.makeMove(quietMove);
+        int score = network.evaluate(board);
+        board.unmakeMove();
+        return score;
+    }
+
+    @Benchmark
+    public int fullRecompute() {
+        board.makeMove(quietMove);
+        board.getAccumulator().refresh(board);
+        int score = network.evaluate(board);
+        board.unmakeMove();
+        return score;
+    }
+
+    @Benchmark
+    public int classicalEvaluation() {
+        return Evaluation.evaluateFromScratch(board);
+    }
+}
@@ -0,0 +1,201 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Finished analyses kept on disk, so that positions analysed in one run are answered at once in the next:
+ * for each position, by Zobrist key, the best move, its score, the depth searched and the number of legal moves.
+ * The file is memory-mapped and used in place, and any number of threads can probe and store at once without
+ * locking, the same way as in TranspositionTable: each entry is the key XORed with the data, then the data,
+ * so that an entry torn by two writers reads as a miss. Entries are grouped in buckets of four (64 bytes);
+ * a new result replaces the same position's entry, else the shallowest entry, entries from earlier runs first.
+ *
+ * File format, big-endian: a 32-byte header (the magic number, the version, the number of buckets, the run
+ * number, the CRC-32 of the buckets, and 8 reserved bytes), then the buckets.
+ * The checksum is written by flush() and close() and checked on opening, so a file damaged on disk, or not
+ * closed after its last store, is rejected.
+ */
+public class AnalysisCache implements Closeable {
+
+    static final int magic = 0x43414331; // "CAC1"
+    static final int version = 1;
+    static final int headerSize = 32;
+    private static final int bucketSize = 4;
+    private static final int entrySize = 16;
+    private static final int checksumOffset = 16;
+    private static final int maxMegabytes = 2047; // a mapping is limited to 2 GB
+
+    // Data layout: bits 0-15 move, 16-31 score (signed), 32-39 depth, 40-47 legal moves, 48-55 run number,
+    // and bit 56 always set, so that a data value of 0 always means an empty entry.
+    private static final int scoreShift = 16;
+    private static final int depthShift = 32;
+    private static final int legalMovesShift = 40;
+    private static final int runShift = 48;
+    private static final long present = 1L << 56;
+    private static final int runMask = 0xFF;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int bucketMask;
+    private final int run; // counts the times the file was opened, to tell this run's entries from older ones
+
+    /**
+     * Open a cache file, or create an empty one if there is none.
+     * @param megabytes: the size of a new file, rounded down to a power of two number of buckets;
+     * an existing file keeps its size
+     * @throws IOException if the file cannot be read or written, is not a cache, or fails its checksum
+     */
+    public AnalysisCache(Path file, int megabytes) throws IOException {
+        this.file = file;
+        boolean exists = Files.exists(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size;
+            if (exists) {
+                size = channel.size();
+                if (size < headerSize || size > Integer.MAX_VALUE) {
+                    throw new IOException("Not an analysis cache: " + file);
+                }
+            } else {
+                long bytes = Math.max(1, Math.min(maxMegabytes, megabytes)) * 1024L * 1024L;
+                size = headerSize + Long.highestOneBit(bytes / (bucketSize * entrySize)) * bucketSize * entrySize;
+            }
+            // The mapping stays valid after the channel is closed, and grows a new file to its size.
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        if (!exists) {
+            buffer.putInt(0, magic);
+            buffer.putInt(4, version);
+            buffer.putInt(8, (buffer.capacity() - headerSize) / (bucketSize * entrySize));
+        }
+        int buckets = buffer.getInt(8);
+        if (buffer.getInt(0) != magic || buffer.getInt(4) != version || buckets <= 0 || Integer.bitCount(buckets) != 1
+                || (long) buckets * bucketSize * entrySize != buffer.capacity() - headerSize) {
+            throw new IOException("Not an analysis cache, or from another version: " + file);
+        }
+        if (exists && buffer.getLong(checksumOffset) != checksum()) {
+            throw new IOException("Analysis cache is corrupt or was not closed: " + file);
+        }
+        bucketMask = buckets - 1;
+        run = (buffer.getInt(12) + 1) & runMask;
+        buffer.putInt(12, run);
+        if (!exists) {
+            flush();
+        }
+    }
+
+    /**
+     * Look up a position.
+     * @param key: the position's Zobrist key
+     * @return the stored data, to be read with move(), score(), depth() and legalMoves(), or 0 if there is none
+     */
+    public long probe(long key) {
+        int index = bucketIndex(key);
+        for (int i = 0; i < bucketSize; i++, index += entrySize) {
+            long data = buffer.getLong(index + 8);
+            if ((buffer.getLong(index) ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Store an analysis, replacing the position's entry if there is one and otherwise the bucket's least valuable
+     * entry: an empty one, else one from an earlier run, else the shallowest.
+     * @param key: the position's Zobrist key
+     * @param move: the best move, or Move.none if there is no legal move
+     * @param score: the score from the point of view of the player to move, which must fit in 16 signed bits
+     * @param depth: the depth searched, from 0 to 255
+     * @param legalMoves: the number of legal moves in the position
+     */
+    public void store(long key, int move, int score, int depth, int legalMoves) {
+        int index = bucketIndex(key);
+        int replace = index;
+        int lowestValue = Integer.MAX_VALUE;
+        for (int i = 0; i < bucketSize; i++, index += entrySize) {
+            long data = buffer.getLong(index + 8);
+            if ((buffer.getLong(index) ^ data) == key && data != 0) {
+                if (depth(data) > depth) {
+                    return; // the deeper analysis is worth more
+                }
+                replace = index;
+                break;
+            }
+            int value = data == 0 ? Integer.MIN_VALUE : depth(data) - 256 * ((run - run(data)) & runMask);
+            if (value < lowestValue) {
+                lowestValue = value;
+                replace = index;
+            }
+        }
+        long data = (move & 0xFFFFL)
+                | (score & 0xFFFFL) << scoreShift
+                | (long) (depth & 0xFF) << depthShift
+                | (long) (legalMoves & 0xFF) << legalMovesShift
+                | (long) run << runShift
+                | present;
+        buffer.putLong(replace, key ^ data);
+        buffer.putLong(replace + 8, data);
+    }
+
+    /**
+     * Write the checksum and force the file to disk. Results stored while this runs may be left out of the checksum,
+     * so call it when no thread is storing.
+     */
+    public void flush() throws IOException {
+        buffer.putLong(checksumOffset, checksum());
+        buffer.force();
+    }
+
+    public void close() throws IOException {
+        flush();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of entries the cache can hold
+     */
+    public int capacity() {
+        return (bucketMask + 1) * bucketSize;
+    }
+
+    private long checksum() {
+        CRC32 crc = new CRC32();
+        ByteBuffer view = buffer.duplicate();
+        view.position(headerSize);
+        crc.update(view);
+        return crc.getValue();
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> scoreShift);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> depthShift) & 0xFF;
+    }
+
+    public static int legalMoves(long data) {
+        return (int) (data >>> legalMovesShift) & 0xFF;
+    }
+
+    private static int run(long data) {
+        return (int) (data >>> runShift) & runMask;
+    }
+
+    private int bucketIndex(long key) {
+        return headerSize + ((int) key & bucketMask) * bucketSize * entrySize;
+    }
+}
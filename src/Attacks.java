@@ -0,0 +1,221 @@
+/**
+ * Precomputed attack tables, indexed by square (y * 8 + x).
+ * Knights, kings and pawns use a plain table per square. Bishops and rooks use magic bitboards:
+ * the blockers on a piece's rays are multiplied by a per-square magic number, and the top bits
+ * of the product index a table of attack sets. All tables are built once when the class loads.
+ * The magic numbers were found by a random search for numbers that map blocker sets with different
+ * attacks to different slots; searching at start-up took half a second, so they are listed here.
+ */
+public final class Attacks {
+
+    private static final int boardSize = 8;
+    private static final int squareCount = boardSize * boardSize;
+
+    private static final long[] knightAttacks = new long[squareCount];
+    private static final long[] kingAttacks = new long[squareCount];
+    private static final long[][] pawnAttacks = new long[2][squareCount]; // indexed by Color.ordinal(), then square
+
+    private static final int[][] bishopDirections = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    private static final int[][] rookDirections = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+
+    private static final long[] bishopMasks = new long[squareCount];
+    private static final long[] bishopMagics = {
+            0x10102002004A1420L, 0x3009080104082090L, 0x20A2020400200808L, 0x0204404080020102L,
+            0x0101104000000028L, 0x28811008040000E8L, 0x1031011032200020L, 0x0041040118921000L,
+            0x0400041004812400L, 0x4100108188008081L, 0x0020484604042A09L, 0x000002208A002100L,
+            0x00000A1210002805L, 0x400A410460448100L, 0x013060480A086000L, 0x2101411400840412L,
+            0x1A10100404500409L, 0x4010028401026400L, 0x2050000800401020L, 0x0008202404001420L,
+            0x0032880400A00600L, 0x0202000022100202L, 0x0204082082111040L, 0x480C210084010800L,
+            0x00C2620410200200L, 0x80C2102042901202L, 0x9000320050040040L, 0x8004080010220040L,
+            0x0020044002003004L, 0x120401884100A003L, 0x2004208014020128L, 0x04010302005400A0L,
+            0x0950084500600402L, 0x81E0900901102200L, 0x10040128008412C0L, 0x0402004042940100L,
+            0x2104204010040100L, 0x0420009100802400L, 0x0204082220808082L, 0x2002004248020218L,
+            0x0001042160208400L, 0x00440D0148101080L, 0x8044A02030000802L, 0xC081044206204800L,
+            0x0000219020800400L, 0x8404010041000201L, 0x02210C0102492209L, 0x8010012110283100L,
+            0x0183880109A00001L, 0x1001411090900080L, 0x2002120084045420L, 0x2126087842020022L,
+            0x8040004010410128L, 0x08024030C2008020L, 0x0121241004812002L, 0x0308010822004000L,
+            0x0083042805141020L, 0x0220804212102288L, 0x8000014100880400L, 0x1000080000840410L,
+            0x0088080031203200L, 0x001002200202C202L, 0x0000054802540400L, 0xA010041108003100L
+    };
+    private static final int[] bishopShifts = new int[squareCount];
+    private static final long[][] bishopTable = new long[squareCount][];
+    private static final long[] rookMasks = new long[squareCount];
+    private static final long[] rookMagics = {
+            0x1080004008801020L, 0x0840092002C03000L, 0x1900200010400900L, 0x0880100008000480L,
+            0x4200100420080200L, 0x8100020100080400L, 0x0200040110886200L, 0x0200008040220411L,
+            0x0404800084400220L, 0x0000401000402000L, 0x0086001081220440L, 0x0408800800100280L,
+            0x000A001201040820L, 0x8848800200840080L, 0x4001000100040200L, 0x0442000102105084L,
+            0x9080010020804100L, 0x0040404000201009L, 0x0000808010002009L, 0x2200090021D00100L,
+            0x0008008008040080L, 0x0004004002010040L, 0x0011040008015042L, 0x00000A0001768104L,
+            0x0000800080204009L, 0x2010004140002001L, 0x9800200280100080L, 0x1000100080080080L,
+            0x0050500500080100L, 0x0000020080040080L, 0x0C10010400420810L, 0x1040008200005104L,
+            0x01808240088004A0L, 0x0882804004802000L, 0x0880402001001100L, 0x0000100080800800L,
+            0x2000480131001500L, 0x0002000400800280L, 0x0080020104000810L, 0x80441044120000A1L,
+            0x0000800040008020L, 0x041040201000C000L, 0x0001004020010010L, 0x0800100100090021L,
+            0x0004080004008080L, 0x0010040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+            0x0088403882010200L, 0x0820400080210100L, 0x0110910040A00300L, 0x0801100280080480L,
+            0x0242009008200600L, 0x1002000489500200L, 0x0040800200010080L, 0x0091800041000080L,
+            0x000C91800020C101L, 0x0A41104009802103L, 0x000880401202210AL, 0x0000300089142101L,
+            0x8002002004100802L, 0x30010002084C0007L, 0x0888221800813004L, 0x000008208044010AL
+    };
+    private static final int[] rookShifts = new int[squareCount];
+    private static final long[][] rookTable = new long[squareCount][];
+
+    // For two squares on a common rank, file or diagonal: the squares strictly between them,
+    // and the whole line through them (including both). Both are 0 for squares that are not aligned.
+    private static final long[][] betweenSquares = new long[squareCount][squareCount];
+    private static final long[][] lineSquares = new long[squareCount][squareCount];
+
+    static {
+        int[][] knightSteps = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+        for (int sq = 0; sq < squareCount; sq++) {
+            int x = sq % boardSize;
+            int y = sq / boardSize;
+            for (int[] step : knightSteps) {
+                knightAttacks[sq] |= bit(x + step[0], y + step[1]);
+            }
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    if (dx != 0 || dy != 0) {
+                        kingAttacks[sq] |= bit(x + dx, y + dy);
+                    }
+                }
+            }
+            pawnAttacks[Color.White.ordinal()][sq] = bit(x - 1, y + 1) | bit(x + 1, y + 1);
+            pawnAttacks[Color.Black.ordinal()][sq] = bit(x - 1, y - 1) | bit(x + 1, y - 1);
+            initMagic(sq, bishopDirections, bishopMasks, bishopMagics, bishopShifts, bishopTable);
+            initMagic(sq, rookDirections, rookMasks, rookMagics, rookShifts, rookTable);
+        }
+        for (int a = 0; a < squareCount; a++) {
+            for (int b = 0; b < squareCount; b++) {
+                long ends = (1L << a) | (1L << b);
+                if (a == b) {
+                    continue;
+                }
+                if ((rook(a, 0) & (1L << b)) != 0) {
+                    betweenSquares[a][b] = rook(a, 1L << b) & rook(b, 1L << a);
+                    lineSquares[a][b] = (rook(a, 0) & rook(b, 0)) | ends;
+                } else if ((bishop(a, 0) & (1L << b)) != 0) {
+                    betweenSquares[a][b] = bishop(a, 1L << b) & bishop(b, 1L << a);
+                    lineSquares[a][b] = (bishop(a, 0) & bishop(b, 0)) | ends;
+                }
+            }
+        }
+    }
+
+    private Attacks() {
+    }
+
+    public static long knight(int sq) {
+        return knightAttacks[sq];
+    }
+
+    public static long king(int sq) {
+        return kingAttacks[sq];
+    }
+
+    /**
+     * The squares a pawn of the given color standing on sq attacks (diagonally forward).
+     */
+    public static long pawn(Color color, int sq) {
+        return pawnAttacks[color.ordinal()][sq];
+    }
+
+    public static long bishop(int sq, long occupied) {
+        return bishopTable[sq][(int) (((occupied & bishopMasks[sq]) * bishopMagics[sq]) >>> bishopShifts[sq])];
+    }
+
+    public static long rook(int sq, long occupied) {
+        return rookTable[sq][(int) (((occupied & rookMasks[sq]) * rookMagics[sq]) >>> rookShifts[sq])];
+    }
+
+    public static long queen(int sq, long occupied) {
+        return bishop(sq, occupied) | rook(sq, occupied);
+    }
+
+    /**
+     * The squares strictly between a and b if they share a rank, file or diagonal, otherwise 0.
+     */
+    public static long between(int a, int b) {
+        return betweenSquares[a][b];
+    }
+
+    /**
+     * The whole rank, file or diagonal through a and b if they share one, otherwise 0.
+     */
+    public static long line(int a, int b) {
+        return lineSquares[a][b];
+    }
+
+    /**
+     * The bit for (x, y), or 0 if the coordinates are off the board.
+     */
+    private static long bit(int x, int y) {
+        if (x < 0 || x >= boardSize || y < 0 || y >= boardSize) {
+            return 0;
+        }
+        return 1L << (y * boardSize + x);
+    }
+
+    /**
+     * Walk each ray from sq until it leaves the board or hits a blocker. The blocker itself is attacked.
+     */
+    private static long slidingAttacks(int sq, long occupied, int[][] directions) {
+        long attacks = 0;
+        for (int[] direction : directions) {
+            int x = sq % boardSize + direction[0];
+            int y = sq / boardSize + direction[1];
+            while (x >= 0 && x < boardSize && y >= 0 && y < boardSize) {
+                long b = bit(x, y);
+                attacks |= b;
+                if ((occupied & b) != 0) {
+                    break;
+                }
+                x += direction[0];
+                y += direction[1];
+            }
+        }
+        return attacks;
+    }
+
+    /**
+     * The squares whose occupancy can change the attack set of a slider on sq.
+     * The last square of each ray is left out, since a piece there is attacked either way.
+     */
+    private static long relevantMask(int sq, int[][] directions) {
+        long mask = 0;
+        for (int[] direction : directions) {
+            int x = sq % boardSize + direction[0];
+            int y = sq / boardSize + direction[1];
+            while (bit(x + direction[0], y + direction[1]) != 0) {
+                mask |= bit(x, y);
+                x += direction[0];
+                y += direction[1];
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Fill in the attack table of a slider on sq, indexed through its magic number.
+     */
+    private static void initMagic(int sq, int[][] directions, long[] masks, long[] magics, int[] shifts, long[][] tables) {
+        long mask = relevantMask(sq, directions);
+        int bits = Long.bitCount(mask);
+        long[] table = new long[1 << bits];
+        // Enumerate every subset of the mask (the "carry-rippler" trick).
+        long blockers = 0;
+        do {
+            int index = (int) ((blockers * magics[sq]) >>> (squareCount - bits));
+            long attacks = slidingAttacks(sq, blockers, directions);
+            if (table[index] != 0 && table[index] != attacks) {
+                throw new IllegalStateException("Magic number for square " + sq + " maps different attacks to one slot");
+            }
+            table[index] = attacks;
+            blockers = (blockers - mask) & mask;
+        } while (blockers != 0);
+        masks[sq] = mask;
+        shifts[sq] = squareCount - bits;
+        tables[sq] = table;
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Analyses many positions at once: for each FEN, its legal moves, whether the player to move is in check, how the game
+ * stands (mate, stalemate, a draw by rule), and optionally the best move and score of a shallow search.
+ * Positions are spread over the threads of a fork-join pool by a parallel stream; each thread keeps its own Board,
+ * move buffer and SearchEngine and reuses them for every position it gets, so a position costs no set-up.
+ * The transposition table is not cleared between positions: entries from one position may speed up or, rarely,
+ * change the result of another, so a searched position's best move and score can depend on the thread's earlier work.
+ * Counts the positions analysed, the time taken and, where the JVM can measure it, the memory allocated per position.
+ * One analysis runs at a time.
+ */
+public class BatchAnalysis {
+
+    /**
+     * What was found out about a position.
+     */
+    public static class Result {
+        public final String fen;
+        public final String error; // why the FEN could not be read, or null
+        public final GameState state;
+        public final int legalMoves;
+        public final boolean inCheck;
+        public final int bestMove; // encoded by Move, or Move.none if there was no search or no legal move
+        public final int score; // centipawns from the point of view of the player to move; see SearchEngine.mateScore
+        public final int depth; // the depth searched, or 0
+
+        Result(String fen, String error, GameState state, int legalMoves, boolean inCheck, int bestMove, int score, int depth) {
+            this.fen = fen;
+            this.error = error;
+            this.state = state;
+            this.legalMoves = legalMoves;
+            this.inCheck = inCheck;
+            this.bestMove = bestMove;
+            this.score = score;
+            this.depth = depth;
+        }
+
+        /**
+         * @return the FEN and the results, separated by tabs: the game state, the number of legal moves, "check" or "-",
+         * then the best move and score if there was a search; or the FEN and "error" with the reason
+         */
+        public String toString() {
+            if (error != null) {
+                return fen + "\terror\t" + error;
+            }
+            StringBuilder builder = new StringBuilder(fen).append('\t').append(state).append('\t').append(legalMoves)
+                    .append('\t').append(inCheck ? "check" : "-");
+            if (depth > 0) {
+                builder.append('\t').append(bestMove == Move.none ? "-" : Move.toString(bestMove)).append('\t').append(score);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The objects one thread reuses for every position it analyses.
+     */
+    private class Worker {
+        final Board board = new Board();
+        final int[] moves = new int[Board.maxMoves];
+        final SearchEngine engine = depth > 0 ? newEngine() : null;
+        final SearchLimits limits = SearchLimits.depth(depth);
+
+        Result analyze(String fen) {
+            try {
+                board.setFen(fen.trim());
+            } catch (IllegalArgumentException e) {
+                return new Result(fen, e.getMessage(), null, 0, false, Move.none, 0, 0);
+            }
+            int legalMoves = board.generateMoves(moves, true);
+            GameState state = board.getState();
+            if (engine == null || state != GameState.Ongoing) {
+                return new Result(fen, null, state, legalMoves, board.isInCheck(), Move.none, 0, 0);
+            }
+            SearchResult result = engine.search(board, limits, null);
+            return new Result(fen, null, state, legalMoves, board.isInCheck(), result.bestMove, result.score, result.depth);
+        }
+    }
+
+    private static final int chunkSize = 1 << 14; // lines read, analysed and written at a time
+    private static final int hashMegabytes = 1; // per thread
+
+    private final int depth;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+    private final List<SearchEngine> engines = new ArrayList<SearchEngine>(); // every worker's, to shut them down
+    private final com.sun.management.ThreadMXBean allocations;
+
+    private final LongAdder positions = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private long elapsedNanos;
+
+    /**
+     * @param depth: how deep to search each position for its best move, or 0 not to search
+     * @param threads: how many threads to analyse with
+     */
+    public BatchAnalysis(int depth, int threads) {
+        this.depth = Math.max(0, Math.min(depth, Search.maxPly - 1));
+        pool = new ForkJoinPool(Math.max(1, threads));
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            allocations = (com.sun.management.ThreadMXBean) threadBean;
+            allocations.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            allocations = null;
+        }
+    }
+
+    /**
+     * Analyse positions.
+     * @param fens: the positions
+     * @return the results, in the same order
+     */
+    public List<Result> analyze(List<String> fens) {
+        return Arrays.asList(analyze(fens.toArray(new String[0])));
+    }
+
+    /**
+     * Analyse one FEN per line, writing one result per line in the same order (see Result.toString()).
+     * Blank lines and lines starting with '#' are skipped. Lines are read and analysed in chunks,
+     * so any number of them can be analysed in bounded memory.
+     */
+    public void analyze(BufferedReader in, Writer out) throws IOException {
+        List<String> chunk = new ArrayList<String>(chunkSize);
+        String line;
+        boolean more = true;
+        while (more) {
+            line = in.readLine();
+            more = line != null;
+            if (more && !line.trim().isEmpty() && !line.startsWith("#")) {
+                chunk.add(line);
+            }
+            if (chunk.size() == chunkSize || (!more && !chunk.isEmpty())) {
+                for (Result result : analyze(chunk.toArray(new String[0]))) {
+                    out.write(result.toString());
+                    out.write('\n');
+                }
+                chunk.clear();
+            }
+        }
+        out.flush();
+    }
+
+    private Result[] analyze(final String[] fens) {
+        final Result[] results = new Result[fens.length];
+        long start = System.nanoTime();
+        // A parallel stream started from inside a fork-join pool runs on that pool's threads.
+        try {
+            pool.submit(new Runnable() {
+                public void run() {
+                    IntStream.range(0, fens.length).parallel().forEach(new IntConsumer() {
+                        public void accept(int i) {
+                            long allocatedBefore = allocations == null ? 0 : allocations.getCurrentThreadAllocatedBytes();
+                            results[i] = workers.get().analyze(fens[i]);
+                            if (allocations != null) {
+                                allocatedBytes.add(allocations.getCurrentThreadAllocatedBytes() - allocatedBefore);
+                            }
+                        }
+                    });
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        elapsedNanos += System.nanoTime() - start;
+        positions.add(fens.length);
+        return results;
+    }
+
+    /**
+     * @return the number of positions analysed so far
+     */
+    public long getPositions() {
+        return positions.sum();
+    }
+
+    public double positionsPerSecond() {
+        return elapsedNanos == 0 ? 0 : positions.sum() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return the average memory allocated while analysing a position, in bytes, or -1 if the JVM cannot tell
+     */
+    public double bytesPerPosition() {
+        long count = positions.sum();
+        return allocations == null ? -1 : count == 0 ? 0 : (double) allocatedBytes.sum() / count;
+    }
+
+    /**
+     * Stop the threads. The analysis cannot be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+        synchronized (engines) {
+            for (SearchEngine engine : engines) {
+                engine.shutdown();
+            }
+            engines.clear();
+        }
+    }
+
+    private SearchEngine newEngine() {
+        SearchEngine engine = new SearchEngine(1, hashMegabytes);
+        synchronized (engines) {
+            engines.add(engine);
+        }
+        return engine;
+    }
+
+    /**
+     * Analyse a file of FENs, or standard input, writing the results to standard output
+     * and the speed to standard error.
+     * Arguments: the file or "-", then optionally the search depth (0 for none) and the number of threads.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: BatchAnalysis fens|- [depth] [threads]");
+            return;
+        }
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        BatchAnalysis analysis = new BatchAnalysis(depth, threads);
+        BufferedReader in = args[0].equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+        try {
+            analysis.analyze(in, new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        } finally {
+            in.close();
+            analysis.shutdown();
+        }
+        System.err.printf("%d positions, %.0f positions/s, %.0f bytes allocated per position%n",
+                analysis.getPositions(), analysis.positionsPerSecond(), analysis.bytesPerPosition());
+    }
+}
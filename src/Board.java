@@ -1,9 +1,4 @@
-import javafx.util.Pair;
-
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
 public class Board {
 
@@ -12,63 +7,412 @@ public class Board {
     public Piece[] backrow = {Piece.Rook, Piece.Knight, Piece.Bishop, Piece.Queen, Piece.King, Piece.Bishop, Piece.Knight, Piece.Rook};
     public enum Castle {Queenside, Kingside};
 
+    private static final Piece[] pieceTypes = Piece.values();
+    private static final Piece[] promotionTypes = {Piece.Queen, Piece.Rook, Piece.Bishop, Piece.Knight};
+
+    /**
+     * The most moves any position can have, and hence the buffer size needed by generateMoves().
+     */
+    public static final int maxMoves = 256;
+
     private Color currentPlayer;
     private Color opponent; // represents the player whose turn it isn't.
-    private Map<Color, Map<Position, Piece>> pieces;
-    private Map<Color, Position> kings;
-    private Position legalEnPassant = null; // Stores the location of the square that can be attacked with en passant this turn.
-    private Map<Color, Map<Castle, Boolean>> canCastle;
+    // Bitboards: bit (y * boardSize + x) is set when the square at (x, y) holds a matching piece.
+    private long[] colorBoards = new long[2]; // indexed by Color.ordinal()
+    private long[] pieceBoards = new long[pieceTypes.length]; // indexed by Piece.ordinal()
+    private long occupied; // union of both color boards
+    private Piece[] squares = new Piece[boardSize * boardSize]; // the piece on each square, for constant time lookup
+    private int[] kings = new int[2]; // the square of each player's king, indexed by Color.ordinal()
+    private int legalEnPassant = -1; // Stores the square that can be attacked with en passant this turn, or -1.
+    private int castlingRights; // bit (2 * Color.ordinal() + Castle.ordinal()) is set while that castle is allowed
+    private int halfmoveClock; // moves by either player since the last capture or pawn move
+    private int fullmoveNumber; // starts at 1 and goes up after each of Black's moves
+    private static final int[] castlingMasks = new int[64]; // rights that survive a move from or to each square
+    private long key; // Zobrist key of the position, kept up to date by every change to the board
+    private long pawnKey; // Zobrist key of the pawns alone, for caching pawn structure evaluation
+    // Evaluation sums, kept up to date like the key: material plus piece-square values (White positive) and game phase.
+    private int midgameScore;
+    private int endgameScore;
+    private int phase;
+    private NnueAccumulator accumulator; // the neural network's first layer, kept up to date like the sums, or null
+
+    static {
+        Arrays.fill(castlingMasks, 0xF);
+        for (Color player : Color.values()) {
+            int backRank = player == Color.White ? 0 : 56;
+            castlingMasks[backRank] &= ~castleBit(player, Castle.Queenside); // rook
+            castlingMasks[backRank + 7] &= ~castleBit(player, Castle.Kingside); // rook
+            castlingMasks[backRank + 4] &= ~(castleBit(player, Castle.Queenside) | castleBit(player, Castle.Kingside)); // king
+        }
+    }
+
+    // Undo stack: one packed record per move made, so that moves can be unmade in order.
+    // Bits 0-14 hold the move, 15-17 the captured piece's ordinal + 1 (0 for none),
+    // 18-21 the castling rights, 22-28 the en passant square + 1, 29-31 the game state's ordinal
+    // and 32-47 the halfmove clock.
+    // keyStack holds the position's key before each move.
+    private long[] undoStack = new long[256];
+    private long[] keyStack = new long[256];
+    private int undoDepth;
+    // Repetitions: the keys of the latest positions, the current one at historyIndex, in a ring that reaches back
+    // past the last 100 plies, beyond which the fifty-move rule has ended the game anyway.
+    // Unlike the undo stack it is copied with the board, so that a search on a copy still sees the game's repetitions.
+    private static final int historySize = 128;
+    private long[] history = new long[historySize];
+    private int historyIndex; // plies played since the position was set up, and earlier positions given to it
+    private static final long[] noKeys = new long[0];
+    private static final int fiftyMoveLimit = 100; // halfmoves without a capture or pawn move that draw the game
+    private static final GameState[] gameStates = GameState.values();
 
     // Front-end interaction
     private ChessFrontEnd frontEnd;
     private GameState state;
-    private Set<Pair<Position, Position>> movesThisTurn;
 
-    // Potential move state
-    private Position oldPotentialPos;
-    private Position newPotentialPos;
-    private Color colorMoved;
-    private Piece pieceMoved;
-    private Piece pieceCaptured;
-    private Position capturePos;
+    // Rule checks made since they were last reported to RulesMetrics. They are counted in plain fields and
+    // reported once per public call (see reportChecks()), so that the checks themselves never read its flag.
+    private int moveRangeChecks;
+    private int attackChecks;
+    private int legalityChecks;
 
     public Board() {
-        pieces = new HashMap<Color, Map<Position, Piece>>();
-        kings = new HashMap<Color, Position>();
-        pieces.put(Color.White, new HashMap<Position, Piece>());
-        pieces.put(Color.Black, new HashMap<Position, Piece>());
         this.reset();
     }
 
+    /**
+     * Copy another board's position, so that it can be explored independently, e.g. by another thread.
+     * The copy has no moves to unmake and shares the other board's front end.
+     * @param other: the board to copy
+     */
+    public Board(Board other) {
+        copyFrom(other);
+    }
+
+    /**
+     * Like new Board(other), but reusing this board's arrays, e.g. for a search that copies a new position into
+     * the same board every time.
+     * @param other: the board to copy
+     */
+    public void copyFrom(Board other) {
+        currentPlayer = other.currentPlayer;
+        opponent = other.opponent;
+        System.arraycopy(other.colorBoards, 0, colorBoards, 0, colorBoards.length);
+        System.arraycopy(other.pieceBoards, 0, pieceBoards, 0, pieceBoards.length);
+        occupied = other.occupied;
+        System.arraycopy(other.squares, 0, squares, 0, squares.length);
+        System.arraycopy(other.kings, 0, kings, 0, kings.length);
+        legalEnPassant = other.legalEnPassant;
+        castlingRights = other.castlingRights;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        key = other.key;
+        pawnKey = other.pawnKey;
+        midgameScore = other.midgameScore;
+        endgameScore = other.endgameScore;
+        phase = other.phase;
+        accumulator = other.accumulator == null ? null : other.accumulator.copy();
+        frontEnd = other.frontEnd;
+        state = other.state;
+        System.arraycopy(other.history, 0, history, 0, history.length);
+        historyIndex = other.historyIndex;
+        undoDepth = 0;
+    }
+
     /**
      * Reset the board to its state at the start of a new game.
      */
     public void reset() {
-        currentPlayer = Color.White;
-        opponent = Color.Black;
-        Map<Position, Piece> whitePieces = getPieces(Color.White);
-        Map<Position, Piece> blackPieces = getPieces(Color.Black);
-        whitePieces.clear();
-        blackPieces.clear();
-        kings.clear();
+        clear();
         for (int x = 0; x < boardSize; x++) {
-            addPiece(Color.White, new Position(x, 1), Piece.Pawn);
-            addPiece(Color.Black, new Position(x, boardSize - 2), Piece.Pawn);
-            addPiece(Color.White, new Position(x, 0), backrow[x]);
-            addPiece(Color.Black, new Position(x, boardSize - 1), backrow[x]);
-            if (backrow[x] == Piece.King) {
-                kings.put(Color.White, new Position(x, 0));
-                kings.put(Color.Black, new Position(x, boardSize - 1));
+            addPiece(Color.White, square(x, 1), Piece.Pawn);
+            addPiece(Color.Black, square(x, boardSize - 2), Piece.Pawn);
+            addPiece(Color.White, square(x, 0), backrow[x]);
+            addPiece(Color.Black, square(x, boardSize - 1), backrow[x]);
+        }
+        setUp(Color.White, 0xF, -1, 0, 1);
+    }
+
+    /**
+     * Set up a position from Forsyth-Edwards Notation, e.g.
+     * "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1".
+     * The move counters may be left out. An en passant square is only kept if a pawn can capture there,
+     * and castling rights only if the king and rook are on their starting squares.
+     * @param fen: the position
+     * @throws IllegalArgumentException if the FEN is malformed or describes an impossible position
+     */
+    public Board(String fen) {
+        setFen(fen);
+    }
+
+    /**
+     * Recreate the position held by a snapshot.
+     * @param snapshot: the position, taken by snapshot() from any board
+     */
+    public Board(Snapshot snapshot) {
+        clear();
+        long pieces = snapshot.occupied();
+        for (int i = 0; pieces != 0; i++) {
+            int pos = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            int code = snapshot.pieceCode(i);
+            addPiece(Snapshot.color(code), pos, Snapshot.piece(code));
+        }
+        setUp(snapshot.getCurrentPlayer(), snapshot.castlingRights(), snapshot.enPassantSquare(),
+                snapshot.halfmoveClock(), snapshot.fullmoveNumber());
+    }
+
+    /**
+     * Replace the position with one given in Forsyth-Edwards Notation; see Board(String).
+     * Moves made before cannot be unmade afterwards. If the FEN is rejected, the board is left in the start position.
+     * @param fen: the position
+     * @throws IllegalArgumentException if the FEN is malformed or describes an impossible position
+     */
+    public void setFen(String fen) {
+        try {
+            String[] fields = fen.trim().split("\\s+");
+            if (fields.length < 4 || fields.length > 6) {
+                throw new IllegalArgumentException("A FEN needs 4 to 6 fields: " + fen);
+            }
+            clear();
+            String[] ranks = fields[0].split("/");
+            if (ranks.length != boardSize) {
+                throw new IllegalArgumentException("A FEN needs 8 ranks: " + fen);
+            }
+            for (int i = 0; i < boardSize; i++) {
+                int y = boardSize - 1 - i;
+                int x = 0;
+                for (char c : ranks[i].toCharArray()) {
+                    if (c >= '1' && c <= '8') {
+                        x += c - '0';
+                        continue;
+                    }
+                    int letter = "pnbrqk".indexOf(Character.toLowerCase(c));
+                    if (letter < 0 || x >= boardSize) {
+                        throw new IllegalArgumentException("Bad rank \"" + ranks[i] + "\" in FEN: " + fen);
+                    }
+                    addPiece(Character.isUpperCase(c) ? Color.White : Color.Black, square(x++, y), pieceTypes[letter]);
+                }
+                if (x != boardSize) {
+                    throw new IllegalArgumentException("Bad rank \"" + ranks[i] + "\" in FEN: " + fen);
+                }
+            }
+            Color player;
+            if (fields[1].equals("w")) {
+                player = Color.White;
+            } else if (fields[1].equals("b")) {
+                player = Color.Black;
+            } else {
+                throw new IllegalArgumentException("Bad side to move in FEN: " + fen);
+            }
+            int rights = 0;
+            if (!fields[2].equals("-")) {
+                for (char c : fields[2].toCharArray()) {
+                    int index = "QKqk".indexOf(c);
+                    if (index < 0) {
+                        throw new IllegalArgumentException("Bad castling rights in FEN: " + fen);
+                    }
+                    rights |= 1 << index;
+                }
+            }
+            int enPassant = -1;
+            if (!fields[3].equals("-")) {
+                enPassant = parseSquare(fields[3]);
+                if (enPassant < 0 || rank(enPassant) != (player == Color.White ? boardSize - 3 : 2)) {
+                    throw new IllegalArgumentException("Bad en passant square in FEN: " + fen);
+                }
+            }
+            int halfmoves = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+            int fullmoves = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+            setUp(player, rights, enPassant, halfmoves, fullmoves);
+        } catch (IllegalArgumentException e) { // including NumberFormatException from the move counters
+            reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the position in Forsyth-Edwards Notation, the inverse of setFen().
+     * An en passant square is only written when a pawn can capture there.
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for (int y = boardSize - 1; y >= 0; y--) {
+            int empty = 0;
+            for (int x = 0; x < boardSize; x++) {
+                int pos = square(x, y);
+                if (squares[pos] == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                String letter = pieceAsString(squares[pos]);
+                fen.append(pieceExists(Color.White, pos) ? letter.toUpperCase() : letter);
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (y > 0) {
+                fen.append('/');
+            }
+        }
+        fen.append(currentPlayer == Color.White ? " w " : " b ");
+        if (castlingRights == 0) {
+            fen.append('-');
+        }
+        for (int i : new int[] {1, 0, 3, 2}) {
+            if ((castlingRights & (1 << i)) != 0) {
+                fen.append("QKqk".charAt(i));
+            }
+        }
+        fen.append(' ');
+        if (legalEnPassant < 0) {
+            fen.append('-');
+        } else {
+            fen.append((char) ('a' + file(legalEnPassant))).append((char) ('1' + rank(legalEnPassant)));
+        }
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return fen.toString();
+    }
+
+    /**
+     * Take an immutable copy of the position that any number of threads can share; see Snapshot.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Empty the board and forget the moves made on it.
+     */
+    private void clear() {
+        colorBoards[0] = colorBoards[1] = 0;
+        for (int i = 0; i < pieceBoards.length; i++) {
+            pieceBoards[i] = 0;
+        }
+        occupied = 0;
+        for (int i = 0; i < squares.length; i++) {
+            squares[i] = null;
+        }
+        kings[0] = kings[1] = -1;
+        undoDepth = 0;
+        historyIndex = 0;
+        key = 0;
+        pawnKey = 0;
+        midgameScore = endgameScore = phase = 0;
+        if (accumulator != null) {
+            accumulator.clear();
+        }
+    }
+
+    /**
+     * Finish setting up a position once its pieces have been added: check that it could occur in a game,
+     * set the remaining state and work out whether the game is already over.
+     */
+    private void setUp(Color player, int rights, int enPassant, int halfmoves, int fullmoves) {
+        String problem = findProblem(player);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+        if (halfmoves < 0 || halfmoves > 0xFFFF || fullmoves < 1 || fullmoves > Snapshot.maxFullmoveNumber) {
+            throw new IllegalArgumentException("Move counters out of range");
+        }
+        finishSetUp(player, rights, enPassant, halfmoves, fullmoves);
+    }
+
+    /**
+     * Set up a position from a list of pieces, with no castling rights and no en passant square.
+     * Meant for enumerating positions in bulk, e.g. by TablebaseGenerator, so an impossible position is
+     * reported by the return value rather than by an exception.
+     * @param squares: the square of each piece
+     * @param colors: the color of each piece
+     * @param pieces: the type of each piece
+     * @param count: the number of pieces
+     * @param player: the player to move
+     * @return whether the position could occur in a game; if not, the board must be set up again before use
+     */
+    boolean setPieces(int[] squares, Color[] colors, Piece[] pieces, int count, Color player) {
+        clear();
+        for (int i = 0; i < count; i++) {
+            if (this.squares[squares[i]] != null) {
+                return false;
             }
+            addPiece(colors[i], squares[i], pieces[i]);
+        }
+        if (findProblem(player) != null) {
+            return false;
         }
-        canCastle = new HashMap<Color, Map<Castle, Boolean>>();
-        canCastle.put(Color.White, new HashMap<Castle, Boolean>());
-        canCastle.put(Color.Black, new HashMap<Castle, Boolean>());
-        canCastle.get(Color.White).put(Castle.Queenside, true);
-        canCastle.get(Color.White).put(Castle.Kingside, true);
-        canCastle.get(Color.Black).put(Castle.Queenside, true);
-        canCastle.get(Color.Black).put(Castle.Kingside, true);
-        state = GameState.Ongoing;
+        finishSetUp(player, 0, -1, 0, 1);
+        return true;
+    }
+
+    /**
+     * @return why the pieces on the board, with the given player to move, could not occur in a game, or null if they could
+     */
+    private String findProblem(Color player) {
+        for (Color color : Color.values()) {
+            long pieces = colorBoards[color.ordinal()];
+            if (Long.bitCount(pieces & pieceBoards[Piece.King.ordinal()]) != 1) {
+                return color + " must have exactly one king";
+            }
+            if (Long.bitCount(pieces) > 16 || Long.bitCount(pieces & pieceBoards[Piece.Pawn.ordinal()]) > boardSize) {
+                return color + " has too many pieces";
+            }
+        }
+        if ((pieceBoards[Piece.Pawn.ordinal()] & 0xFF000000000000FFL) != 0) {
+            return "Pawns cannot stand on the first or last rank";
+        }
+        Color other = getOpponent(player);
+        if (isKingAttacked(other)) {
+            return other + "'s king is attacked, but it is " + player + "'s turn";
+        }
+        return null;
+    }
+
+    private void finishSetUp(Color player, int rights, int enPassant, int halfmoves, int fullmoves) {
+        currentPlayer = player;
+        opponent = getOpponent(player);
+        // Keep only the castling rights whose king and rook have not left their squares.
+        castlingRights = 0;
+        for (Color color : Color.values()) {
+            for (Castle side : Castle.values()) {
+                int backRank = color == Color.White ? 0 : boardSize - 1;
+                int rookPos = square(side == Castle.Kingside ? boardSize - 1 : 0, backRank);
+                if ((rights & castleBit(color, side)) != 0 && kings[color.ordinal()] == square(4, backRank)
+                        && getPiece(color, rookPos) == Piece.Rook) {
+                    castlingRights |= castleBit(color, side);
+                }
+            }
+        }
+        // Keep the en passant square only if a pawn can capture there, as makeMove() does.
+        legalEnPassant = -1;
+        if (enPassant >= 0) {
+            int pushed = enPassant + (player == Color.White ? -boardSize : boardSize);
+            if (getPiece(opponent, pushed) == Piece.Pawn && squares[enPassant] == null
+                    && (Attacks.pawn(opponent, enPassant) & colorBoards[player.ordinal()] & pieceBoards[Piece.Pawn.ordinal()]) != 0) {
+                legalEnPassant = enPassant;
+            }
+        }
+        halfmoveClock = halfmoves;
+        fullmoveNumber = fullmoves;
+        key ^= Zobrist.castling(castlingRights) ^ Zobrist.enPassant(legalEnPassant);
+        if (player == Color.Black) {
+            key ^= Zobrist.blackToMove();
+        }
+        history[0] = key;
+        updateState();
+    }
+
+    /**
+     * Parse a square in algebraic notation, e.g. "e3".
+     * @return the square (y * 8 + x), or -1 if the text is not a square
+     */
+    private int parseSquare(String text) {
+        if (text.length() != 2 || text.charAt(0) < 'a' || text.charAt(0) > 'h' || text.charAt(1) < '1' || text.charAt(1) > '8') {
+            return -1;
+        }
+        return square(text.charAt(0) - 'a', text.charAt(1) - '1');
     }
 
     /**
@@ -80,146 +424,649 @@ public class Board {
      */
     //TODO: Make this return a set of altered pieces instead of a boolean
     public boolean move(Position pos, Position newPos) {
+        return move(pos.square(), newPos.square(), null);
+    }
+
+    /**
+     * Like move(pos, newPos), but with the squares given as coordinates.
+     * @return whether the move was made (is legal) or not; false for coordinates off the board
+     */
+    public boolean move(int x, int y, int nx, int ny) {
+        if (!isOnBoard(x, y) || !isOnBoard(nx, ny)) {
+            return false;
+        }
+        return move(square(x, y), square(nx, ny), null);
+    }
+
+    private boolean isOnBoard(int x, int y) {
+        return x >= 0 && x < boardSize && y >= 0 && y < boardSize;
+    }
+
+    /**
+     * Like move(pos, newPos), but with squares given as indices (y * 8 + x) and the piece a pawn is promoted to
+     * given up front, so that the front end need not be asked, e.g. by a server where no one can be asked.
+     * @param from: the square of the piece to move
+     * @param to: the square to move it to
+     * @param promotion: the piece to promote to if the move is a promotion, or null to ask the front end
+     * @return whether the move was made (is legal) or not
+     */
+    public boolean move(int from, int to, Piece promotion) {
+        // Without a recording the event is never committed, and the JIT does away with it.
+        MoveEvent event = new MoveEvent();
+        event.begin();
+        boolean measured = RulesMetrics.enabled;
+        long start = measured ? System.nanoTime() : 0;
+        GameState stateBefore = state;
+        boolean legal = tryMove(from, to, promotion);
+        if (measured) {
+            long nanos = System.nanoTime() - start;
+            // Only a new slowest move is described, with the position it was played in or led to.
+            if (RulesMetrics.recordMove(nanos, legal)) {
+                RulesMetrics.recordSlowestMove(nanos, moveName(from, to, promotion) + (legal ? " to reach " : " in ") + toFen());
+            }
+        }
+        reportChecks();
+        if (event.shouldCommit()) {
+            event.move = moveName(from, to, promotion);
+            event.legal = legal;
+            event.position = toFen();
+            event.commit();
+        }
+        if (stateBefore == GameState.Ongoing && state != GameState.Ongoing) {
+            if (measured) {
+                RulesMetrics.recordGameEnd();
+            }
+            GameEndEvent end = new GameEndEvent();
+            if (end.shouldCommit()) {
+                end.result = state.toString();
+                end.fullmoveNumber = fullmoveNumber;
+                end.position = toFen();
+                end.commit();
+            }
+        }
+        return legal;
+    }
+
+    private String moveName(int from, int to, Piece promotion) {
+        boolean onBoard = from >= 0 && from < boardSize * boardSize && to >= 0 && to < boardSize * boardSize;
+        return onBoard ? Move.toString(Move.encode(from, to, promotion)) : from + "-" + to;
+    }
+
+    private boolean tryMove(int from, int to, Piece promotion) {
+        if (from < 0 || from >= boardSize * boardSize || to < 0 || to >= boardSize * boardSize) {
+            return false;
+        }
         // A player cannot move unless it is their turn
-        if (!pieceExists(currentPlayer, pos)) {
+        if (!pieceExists(currentPlayer, from)) {
             return false;
         }
-        if (inMoveRange(currentPlayer, pos, newPos)) {
-            Piece movedPiece = getPiece(currentPlayer, pos);
-            //Piece movedPiece = pieces.get(currentPlayer).get(pos);
-            makePotentialMove(currentPlayer, pos, newPos);
-            if (isKingAttacked(currentPlayer)) {
-                // A player may not make a move that endangers their king.
-                revertPotentialMove();
-                return false;
+        if (!inMoveRange(currentPlayer, from, to)) {
+            return false;
+        }
+        // Legality does not depend on which piece a pawn is promoted to, so test with any of them.
+        boolean promotes = squares[from] == Piece.Pawn && canPromoteOn(currentPlayer, to);
+        if (promotes && (promotion == Piece.Pawn || promotion == Piece.King)) {
+            return false;
+        }
+        if (!isLegal(Move.encode(from, to, promotes ? Piece.Queen : null))) {
+            // A player may not make a move that endangers their king.
+            return false;
+        }
+        // The move is legal since it follows moving rules and does not expose the king.
+        // We hence "lock in" the move.
+        if (promotes && promotion == null) {
+            promotion = frontEnd.askPromotion();
+        }
+        makeMove(Move.encode(from, to, promotes ? promotion : null));
+        updateState();
+        return true;
+    }
+
+    /**
+     * Work out whether the game has ended: checkmate or stalemate, then the fifty-move rule (a mate on the
+     * hundredth halfmove still counts), then threefold repetition. Draws by rule end the game at once,
+     * without waiting for a player to claim them.
+     */
+    private void updateState() {
+        if (!hasLegalMove()) {
+            // Checkmate or stalemate, depending on if the new turn player's king is currently attacked.
+            state = !isKingAttacked(currentPlayer) ? GameState.Stalemate : (opponent == Color.White ? GameState.WhiteWin : GameState.BlackWin);
+        } else if (halfmoveClock >= fiftyMoveLimit) {
+            state = GameState.FiftyMoveRule;
+        } else if (repetitions() >= 2) {
+            state = GameState.ThreefoldRepetition;
+        } else {
+            state = GameState.Ongoing;
+        }
+    }
+
+    /**
+     * Count the earlier occurrences of the current position (with the same player to move, castling rights and
+     * en passant square) since the last capture or pawn move, which no position before it can repeat.
+     * Only every other earlier position, those with the same player to move, is compared.
+     * @return the number of earlier occurrences: 1 for a first repetition, 2 for a threefold repetition
+     */
+    public int repetitions() {
+        int window = Math.min(Math.min(halfmoveClock, historyIndex), historySize - 1);
+        int count = 0;
+        // Each player needs at least two moves to bring a position back.
+        for (int back = 4; back <= window; back += 2) {
+            if (history[(historyIndex - back) & (historySize - 1)] == key) {
+                count++;
             }
-            // The move is legal since it follows moving rules and does not expose the king.
-            // We hence "lock in" the move.
-            // Update conditions for special rules:
-            // En passant:
-            // If a pawn was double moved:
-            if (movedPiece == Piece.Pawn && Math.abs(newPos.y - pos.y) == 2) {
-                legalEnPassant = new Position(newPos.x, newPos.y + (currentPlayer == Color.White ? 1 : -1));
-            } else {
-                legalEnPassant = null;
-            }
-            // Pawn promotion
-            if (canPromote(currentPlayer, newPos)) {
-                Piece promotedPiece = frontEnd.askPromotion();
-                removePiece(currentPlayer, newPos);
-                addPiece(currentPlayer, newPos, promotedPiece);
-            }
-            // Castling:
-            if (movedPiece == Piece.King) {
-                disableCastle(currentPlayer, Castle.Queenside);
-                disableCastle(currentPlayer, Castle.Kingside);
-            }
-            if (movedPiece == Piece.Rook) {
-                if (pos.x == 0) {
-                    disableCastle(currentPlayer, Castle.Queenside);
-                } else if (pos.x == boardSize - 1) {
-                    disableCastle(currentPlayer, Castle.Kingside);
+        }
+        return count;
+    }
+
+    /**
+     * @return the keys of the earlier positions the current one could repeat, those since the last capture or pawn
+     * move, oldest first; at most halfmoveClock of them. With setEarlierKeys() they let a board set up from a Snapshot
+     * carry on detecting repetitions, without keeping the whole board.
+     */
+    public long[] getEarlierKeys() {
+        int count = Math.min(Math.min(halfmoveClock, historyIndex), historySize - 1);
+        if (count == 0) {
+            return noKeys;
+        }
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = history[(historyIndex - count + i) & (historySize - 1)];
+        }
+        return keys;
+    }
+
+    /**
+     * Take the keys of the positions played before the current one, as returned by getEarlierKeys(), so that
+     * repetitions of them count, and work out the game state again. Call it right after setting up the position.
+     * @param keys: the keys, oldest first
+     */
+    public void setEarlierKeys(long[] keys) {
+        int count = Math.min(keys.length, historySize - 1);
+        System.arraycopy(keys, keys.length - count, history, 0, count);
+        historyIndex = count;
+        history[count] = key;
+        updateState();
+    }
+
+    /**
+     * Find the legal move with a name in long algebraic notation, e.g. "e2e4" or "e7e8q", as written by Move.toString().
+     * @param name: the move's name
+     * @param moves: buffer to generate the legal moves into, at least maxMoves long
+     * @return the move, encoded by Move, or Move.none if no legal move has that name
+     */
+    public int findMove(String name, int[] moves) {
+        int count = generateMoves(moves, true);
+        for (int i = 0; i < count; i++) {
+            if (Move.toString(moves[i]).equals(name)) {
+                return moves[i];
+            }
+        }
+        return Move.none;
+    }
+
+    /**
+     * Generate the moves of the player whose turn it is, without allocating.
+     * Pseudo-legal moves follow the basic rules of moving but may expose the king;
+     * legal moves are exactly the moves that move() would accept.
+     * A pawn reaching the last rank yields one move per piece it can be promoted to.
+     * @param moves: buffer to fill with moves encoded by Move, at least maxMoves long
+     * @param legal: whether to leave out moves that would leave the player's king attacked
+     * @return the number of moves written to the buffer
+     */
+    public int generateMoves(int[] moves, boolean legal) {
+        int count = addMoves(moves, legal);
+        reportChecks();
+        return count;
+    }
+
+    private int addMoves(int[] moves, boolean legal) {
+        Color player = currentPlayer;
+        long own = colorBoards[player.ordinal()];
+        long pieces = own;
+        int count = 0;
+        long checkers = legal ? checkers(player) : 0;
+        long pinned = legal ? pinnedPieces(player) : 0;
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            long targets = pieceTargets(player, from);
+            if (squares[from] == Piece.Pawn && legalEnPassant >= 0) {
+                targets |= Attacks.pawn(player, from) & (1L << legalEnPassant);
+            } else if (squares[from] == Piece.King) {
+                if (canCastle(player, Castle.Kingside) && castlingAllowed(player, from, Castle.Kingside)) {
+                    targets |= 1L << (from + 2);
+                }
+                if (canCastle(player, Castle.Queenside) && castlingAllowed(player, from, Castle.Queenside)) {
+                    targets |= 1L << (from - 2);
                 }
             }
-            // Check for end of the game:
-            // We need to copy the opponent's pieces into a new iterator.
-            // keySet returns a view into the map, and will cause an error if a key is altered.
-            Set<Position> positionsToCopy = getPieces(opponent).keySet();
-            Set<Position> opponentPieces = new HashSet<Position>(positionsToCopy);
-            for (Position checkPos: opponentPieces) {
-                Set<Position> moves = possibleMoves(opponent, checkPos);
-                for (Position checkNewPos : moves) {
-                    makePotentialMove(opponent, checkPos, checkNewPos);
-                    if (!isKingAttacked(opponent)) {
-                        revertPotentialMove();
-                        // The opponent can make a legal move without their king being attacked, so the game is not over.
-                        // Switch the turn player:
-                        currentPlayer = getOpponent(currentPlayer);
-                        opponent = getOpponent(opponent);
-                        return true;
+            targets &= ~own;
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                if (legal && !isLegal(Move.encode(from, to), checkers, pinned)) {
+                    continue;
+                }
+                if (squares[from] == Piece.Pawn && canPromoteOn(player, to)) {
+                    for (Piece promotion : promotionTypes) {
+                        moves[count++] = Move.encode(from, to, promotion);
                     }
-                    revertPotentialMove();
+                } else {
+                    moves[count++] = Move.encode(from, to);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Find the squares a piece can move to by the basic rules of moving, apart from castling and en passant.
+     * The result may include squares holding the player's own pieces.
+     */
+    private long pieceTargets(Color player, int pos) {
+        switch (squares[pos]) {
+            case Pawn:
+                return pawnTargets(player, pos);
+            case Knight:
+                return Attacks.knight(pos);
+            case Bishop:
+                return Attacks.bishop(pos, occupied);
+            case Rook:
+                return Attacks.rook(pos, occupied);
+            case Queen:
+                return Attacks.queen(pos, occupied);
+            default:
+                return Attacks.king(pos);
+        }
+    }
+
+    /**
+     * Find the squares a pawn can move to: forward onto empty squares, or diagonally by capturing.
+     * En passant is left to the caller.
+     */
+    private long pawnTargets(Color player, int pos) {
+        int moveDirection = player == Color.White ? boardSize : -boardSize;
+        int initialY = player == Color.White ? 1 : boardSize - 2;
+        long targets = Attacks.pawn(player, pos) & colorBoards[getOpponent(player).ordinal()];
+        int newPos = pos + moveDirection;
+        if (canPassThrough(newPos)) {
+            targets |= 1L << newPos;
+            if (rank(pos) == initialY && canPassThrough(newPos + moveDirection)) {
+                targets |= 1L << (newPos + moveDirection);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Determine whether the player whose turn it is has any legal move, stopping at the first one found.
+     * Instead of making trial moves, this uses the pieces giving check and the pieces pinned to the king:
+     * a king move is legal if its destination is not attacked once the king has left its square,
+     * and any other move must stay on its pin ray and, in check, capture or block the checking piece.
+     * @return whether a legal move exists; if not, the game is over
+     */
+    public boolean hasLegalMove() {
+        Color player = currentPlayer;
+        long own = colorBoards[player.ordinal()];
+        int king = kings[player.ordinal()];
+        // Castling never needs testing: if it is legal, so is the king's first step towards the rook.
+        long kingTargets = Attacks.king(king) & ~own;
+        // Take the king off the board, so that it cannot shield its own destination from a slider.
+        long withoutKing = occupied & ~(1L << king);
+        while (kingTargets != 0) {
+            int to = Long.numberOfTrailingZeros(kingTargets);
+            kingTargets &= kingTargets - 1;
+            if (attackers(opponent, to, withoutKing) == 0) {
+                return true;
+            }
+        }
+        long checkers = checkers(player);
+        if (Long.bitCount(checkers) > 1) {
+            // Double check: only the king can move.
+            return false;
+        }
+        long evasions = checkers == 0 ? ~own : checkers | Attacks.between(king, Long.numberOfTrailingZeros(checkers));
+        long pinned = pinnedPieces(player);
+        long pieces = own & ~(1L << king);
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            long targets = pieceTargets(player, from) & evasions;
+            if ((pinned & (1L << from)) != 0) {
+                // A pinned piece may only move along the line between the king and the pinning piece.
+                targets &= Attacks.line(king, from);
+            }
+            if (targets != 0) {
+                return true;
+            }
+        }
+        // En passant can resolve a check by a pawn without landing on it, so it is tested on its own.
+        if (legalEnPassant >= 0) {
+            long capturers = Attacks.pawn(opponent, legalEnPassant) & own & pieceBoards[Piece.Pawn.ordinal()];
+            while (capturers != 0) {
+                int from = Long.numberOfTrailingZeros(capturers);
+                capturers &= capturers - 1;
+                if (isLegalEnPassant(player, from, legalEnPassant)) {
+                    return true;
                 }
             }
-            // The game is over: Checkmate or draw, depending on if the opponent's king is currently attacked.
-            state = !isKingAttacked(opponent) ? GameState.Draw : (currentPlayer == Color.White ? GameState.WhiteWin : GameState.BlackWin);
-            return true;
         }
         return false;
     }
 
-    public boolean move(int x, int y, int nx, int ny) {
-        return move(new Position(x, y), new Position(nx, ny));
+    /**
+     * Find a player's pieces that are pinned to their king: each stands alone between the king
+     * and an opposing bishop, rook or queen, so moving it off that line would expose the king.
+     */
+    private long pinnedPieces(Color player) {
+        int king = kings[player.ordinal()];
+        long enemy = colorBoards[getOpponent(player).ordinal()];
+        long queens = pieceBoards[Piece.Queen.ordinal()];
+        // Enemy sliders that would attack the king if none of the player's pieces were in the way.
+        long snipers = enemy & ((Attacks.rook(king, enemy) & (pieceBoards[Piece.Rook.ordinal()] | queens))
+                | (Attacks.bishop(king, enemy) & (pieceBoards[Piece.Bishop.ordinal()] | queens)));
+        long pinned = 0;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Attacks.between(king, sniper) & occupied;
+            if (Long.bitCount(blockers) == 1) {
+                pinned |= blockers & colorBoards[player.ordinal()];
+            }
+        }
+        return pinned;
     }
 
     /**
-     * Make a legal move and prepare state so that the move is reverted by calling revertPotentialMove().
-     * @param player: the player making the move
-     * @param pos: the position of the piece to move
-     * @param newPos: the position to move the piece to
+     * Find the opposing pieces that attack a player's king.
      */
-    private void makePotentialMove(Color player, Position pos, Position newPos) {
-        if (!inMoveRange(player, pos, newPos)) {
-            return;
+    private long checkers(Color player) {
+        return attackers(getOpponent(player), kings[player.ordinal()], occupied);
+    }
+
+    /**
+     * Determine whether a move by the player whose turn it is leaves their king safe, without changing the board,
+     * so any number of threads may test moves against a board that nobody is moving on.
+     * @param move: a move that follows the basic rules of moving, e.g. from generateMoves(moves, false)
+     * @return whether the move is legal
+     */
+    public boolean isLegal(int move) {
+        boolean legal = isLegal(move, checkers(currentPlayer), pinnedPieces(currentPlayer));
+        reportChecks();
+        return legal;
+    }
+
+    /**
+     * Determine whether any encoded move is legal in the position, without changing the board or generating moves,
+     * e.g. a move stored for a position with the same key, which may not even follow the basic rules of moving here.
+     * @param move: the move, encoded by Move
+     * @return whether move() would accept it, with the same promotion piece
+     */
+    public boolean isLegalMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        boolean legal = false;
+        if (inMoveRange(currentPlayer, from, to)) {
+            boolean promotes = squares[from] == Piece.Pawn && canPromoteOn(currentPlayer, to);
+            boolean encoded = !promotes && move == Move.encode(from, to);
+            for (int i = 0; promotes && !encoded && i < promotionTypes.length; i++) {
+                encoded = move == Move.encode(from, to, promotionTypes[i]);
+            }
+            legal = encoded && isLegal(move, checkers(currentPlayer), pinnedPieces(currentPlayer));
         }
-        colorMoved = player;
-        pieceMoved = getPiece(player, pos);
-        if (pieceMoved == Piece.Pawn && newPos.equals(legalEnPassant)) {
-            capturePos = legalEnPassant;
-            pieceCaptured = getPiece(getOpponent(player), legalEnPassant);
-            removePiece(getOpponent(player), legalEnPassant);
-        } else if (pieceExists(getOpponent(player), newPos)) {
-            capturePos = newPos;
-            pieceCaptured = getPiece(getOpponent(player), newPos);
-            removePiece(getOpponent(player), newPos);
-        } else {
-            capturePos = null;
-            pieceCaptured = null;
+        reportChecks();
+        return legal;
+    }
+
+    /**
+     * Determine whether a move that follows the basic rules of moving leaves the king safe,
+     * given the pieces checking the king and the pieces pinned to it.
+     */
+    private boolean isLegal(int move, long checkers, long pinned) {
+        legalityChecks++;
+        Color player = currentPlayer;
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int king = kings[player.ordinal()];
+        if (from == king) {
+            // castlingAllowed() has already checked every square the king crosses.
+            return Math.abs(to - from) == 2
+                    || attackers(getOpponent(player), to, occupied & ~(1L << king)) == 0;
+        }
+        if (squares[from] == Piece.Pawn && to == legalEnPassant) {
+            return isLegalEnPassant(player, from, to);
+        }
+        if (Long.bitCount(checkers) > 1) {
+            return false;
+        }
+        if (checkers != 0 && ((checkers | Attacks.between(king, Long.numberOfTrailingZeros(checkers))) & (1L << to)) == 0) {
+            return false;
+        }
+        return (pinned & (1L << from)) == 0 || (Attacks.line(king, from) & (1L << to)) != 0;
+    }
+
+    /**
+     * Determine whether capturing en passant leaves the king safe. The capture empties two squares at once,
+     * which can uncover an attack along the rank that no pin mask shows, so the attacks on the king
+     * are recomputed with the pieces where they would be after the capture.
+     */
+    private boolean isLegalEnPassant(Color player, int from, int to) {
+        int captured = square(file(to), rank(from));
+        long blockers = (occupied & ~(1L << from) & ~(1L << captured)) | (1L << to);
+        return (attackers(getOpponent(player), kings[player.ordinal()], blockers) & ~(1L << captured)) == 0;
+    }
+
+    /**
+     * Make a move for the player whose turn it is, without checking that it is legal, and pass the turn.
+     * The move must be one produced by generateMoves(); pseudo-legal moves are allowed.
+     * Unlike move(), this never asks the front end anything and does not update the game state,
+     * so it is suitable for searching. Every call must be matched by a call to unmakeMove().
+     * @param move: the move to make, encoded by Move
+     */
+    public void makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        Color player = currentPlayer;
+        Piece pieceMoved = squares[from];
+        int capturePos = to;
+        if (pieceMoved == Piece.Pawn && to == legalEnPassant) {
+            // The captured pawn sits beside the moving pawn, on the en passant square's file.
+            capturePos = square(file(to), rank(from));
+        }
+        Piece pieceCaptured = pieceExists(opponent, capturePos) ? squares[capturePos] : null;
+        if (undoDepth == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+            keyStack = Arrays.copyOf(keyStack, keyStack.length * 2);
+        }
+        keyStack[undoDepth] = key;
+        undoStack[undoDepth++] = (move & 0x7FFF)
+                | (long) (pieceCaptured == null ? 0 : pieceCaptured.ordinal() + 1) << 15
+                | (long) castlingRights << 18
+                | (long) (legalEnPassant + 1) << 22
+                | (long) state.ordinal() << 29
+                | (long) halfmoveClock << 32;
+        if (pieceCaptured != null) {
+            removePiece(opponent, capturePos);
+        }
+        movePiece(player, from, to);
+        Piece promotion = Move.promotion(move);
+        if (promotion != null) {
+            removePiece(player, to);
+            addPiece(player, to, promotion);
         }
         // Castling special case: Need to move the corresponding rook.
-        // Note that the move was already confirmed legal, and the king was already confirmed not to be attacked.
-        // Hence we will never need to revert this move.
         if (pieceMoved == Piece.King) {
             // Castling kingside:
             // Move the right hand rook one space to the left of the king.
-            if (newPos.x - pos.x == 2) {
-                movePiece(player, new Position(boardSize - 1, pos.y), new Position(newPos.x - 1, pos.y));
+            if (to - from == 2) {
+                movePiece(player, square(boardSize - 1, rank(from)), to - 1);
             // Castling queenside:
             // Move the left hand rook one space to the right of the king.
-            } else if (newPos.x - pos.x == -2) {
-                movePiece(player, new Position(0, pos.y), new Position(newPos.x + 1, pos.y));
+            } else if (to - from == -2) {
+                movePiece(player, square(0, rank(from)), to + 1);
+            }
+        }
+        // Update conditions for special rules:
+        // En passant is possible next turn only if a pawn was double moved next to an opposing pawn.
+        key ^= Zobrist.enPassant(legalEnPassant) ^ Zobrist.castling(castlingRights);
+        legalEnPassant = -1;
+        if (pieceMoved == Piece.Pawn && Math.abs(to - from) == 2 * boardSize) {
+            int skipped = (from + to) / 2;
+            if ((Attacks.pawn(player, skipped) & pieceBoards[Piece.Pawn.ordinal()] & colorBoards[opponent.ordinal()]) != 0) {
+                legalEnPassant = skipped;
             }
         }
-        oldPotentialPos = pos;
-        newPotentialPos = newPos;
-        movePiece(player, pos, newPos);
+        // Moving the king or a rook, or capturing a rook, gives up castling on that side.
+        castlingRights &= castlingMasks[from] & castlingMasks[to];
+        key ^= Zobrist.enPassant(legalEnPassant) ^ Zobrist.castling(castlingRights) ^ Zobrist.blackToMove();
+        halfmoveClock = pieceMoved == Piece.Pawn || pieceCaptured != null ? 0 : Math.min(halfmoveClock + 1, 0xFFFF);
+        if (player == Color.Black) {
+            fullmoveNumber++;
+        }
+        history[++historyIndex & (historySize - 1)] = key;
+        // Switch the turn player:
+        currentPlayer = opponent;
+        opponent = player;
     }
 
     /**
-     * Revert the most recent move made by makePotentialMove().
-     * The board and game state will return to how it was before the most recent call of makePotentialMove().
+     * Unmake the most recent move made by makeMove() or move(), restoring the board, the castling rights,
+     * the en passant square and the game state exactly as they were before it.
+     * @return whether there was a move to unmake
      */
-    private void revertPotentialMove() {
-        // Revert move
-        removePiece(colorMoved, newPotentialPos);
-        addPiece(colorMoved, oldPotentialPos, pieceMoved);
-        // Revert the capture if there was one
-        if (pieceCaptured != null) {
-            addPiece(getOpponent(colorMoved), capturePos, pieceCaptured);
+    public boolean unmakeMove() {
+        if (undoDepth == 0) {
+            return false;
+        }
+        long record = undoStack[--undoDepth];
+        int move = (int) (record & 0x7FFF);
+        int captured = (int) (record >>> 15) & 0x7;
+        int from = Move.from(move);
+        int to = Move.to(move);
+        // Switch the turn player back:
+        Color player = opponent;
+        opponent = currentPlayer;
+        currentPlayer = player;
+        castlingRights = (int) (record >>> 18) & 0xF;
+        legalEnPassant = ((int) (record >>> 22) & 0x7F) - 1;
+        state = gameStates[(int) (record >>> 29) & 0x7];
+        halfmoveClock = (int) (record >>> 32) & 0xFFFF;
+        if (player == Color.Black) {
+            fullmoveNumber--;
+        }
+        if (Move.promotion(move) != null) {
+            removePiece(player, to);
+            addPiece(player, from, Piece.Pawn);
+        } else {
+            movePiece(player, to, from);
+        }
+        Piece pieceMoved = squares[from];
+        if (pieceMoved == Piece.King) {
+            // Put the rook back if the move was a castle.
+            if (to - from == 2) {
+                movePiece(player, to - 1, square(boardSize - 1, rank(from)));
+            } else if (to - from == -2) {
+                movePiece(player, to + 1, square(0, rank(from)));
+            }
+        }
+        if (captured != 0) {
+            int capturePos = pieceMoved == Piece.Pawn && to == legalEnPassant ? square(file(to), rank(from)) : to;
+            addPiece(opponent, capturePos, pieceTypes[captured - 1]);
+        }
+        key = keyStack[undoDepth];
+        historyIndex--;
+        return true;
+    }
+
+    /**
+     * @return the Zobrist key of the current position, which identifies it up to hash collisions
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * @return the Zobrist key of the pawns alone
+     */
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    /**
+     * @return the sum of Evaluation.midgame() over every piece on the board
+     */
+    public int getMidgameScore() {
+        return midgameScore;
+    }
+
+    /**
+     * @return the sum of Evaluation.endgame() over every piece on the board
+     */
+    public int getEndgameScore() {
+        return endgameScore;
+    }
+
+    /**
+     * @return the sum of Evaluation.phase() over every piece on the board
+     */
+    public int getPhase() {
+        return phase;
+    }
+
+    /**
+     * Keep a neural network's first layer up to date with the position from now on, for Network.evaluate().
+     * Copies of the board keep their own.
+     * @param network: the network, or null to stop
+     */
+    public void setNetwork(Network network) {
+        if (network == null) {
+            accumulator = null;
+        } else if (accumulator == null || accumulator.getNetwork() != network) {
+            accumulator = new NnueAccumulator(network, this);
         }
     }
 
+    /**
+     * @return the network's first layer for the position, or null if no network is set
+     */
+    NnueAccumulator getAccumulator() {
+        return accumulator;
+    }
+
     private Color getOpponent(Color player) {
         return player == Color.White ? Color.Black : Color.White;
     }
 
-    private int signum(int value) {
-        if (value > 0) {
-            return 1;
-        } else if (value < 0) {
-            return -1;
+    /**
+     * @return whether the king of the player whose turn it is is attacked
+     */
+    public boolean isInCheck() {
+        boolean inCheck = isKingAttacked(currentPlayer);
+        reportChecks();
+        return inCheck;
+    }
+
+    /**
+     * Pass the rule checks counted since the last report to RulesMetrics if it is on, else drop them.
+     * Called at the end of each public method that makes checks, so the flag is read once per call.
+     */
+    private void reportChecks() {
+        if (RulesMetrics.enabled) {
+            RulesMetrics.addChecks(moveRangeChecks, attackChecks, legalityChecks);
         }
-        return 0;
+        moveRangeChecks = 0;
+        attackChecks = 0;
+        legalityChecks = 0;
+    }
+
+    /**
+     * Determine whether any piece of a player attacks a square.
+     * @param attacker: the player whose pieces are attacking
+     * @param pos: the square (y * 8 + x)
+     * @return whether the square is attacked
+     */
+    public boolean isAttackedBy(Color attacker, int pos) {
+        return attackers(attacker, pos, occupied) != 0;
     }
 
     /**
@@ -228,212 +1075,221 @@ public class Board {
      * @return whether the turn player's king is currently attacked
      */
     private boolean isKingAttacked(Color player) {
-        Position king = kings.get(player);
-        return isAttacked(player, king);
+        return isAttacked(player, kings[player.ordinal()]);
     }
 
-    //FIXME: isAttacked counts a forward pawn move as an attack
-    private boolean isAttacked(Color player, Position pos) {
-        Color opp = getOpponent(player);
-        Map<Position, Piece> opponentPieces = getPieces(opp);
-        for (Position oppPosition : opponentPieces.keySet()) {
-            if (inMoveRange(opp, oppPosition, pos)) {
-                return true;
-            }
-        }
-        return false;
+    /**
+     * Determine whether a square is attacked by any of the given player's opponent's pieces.
+     * Pawns only attack diagonally, so the square in front of a pawn is not attacked by it.
+     * @param player: The player defending the square
+     * @param pos: The square to test
+     * @return whether an opposing piece attacks the square
+     */
+    private boolean isAttacked(Color player, int pos) {
+        attackChecks++;
+        return attackers(getOpponent(player), pos, occupied) != 0;
+    }
+
+    /**
+     * Find the pieces of a player that attack a square, given the squares that block sliding pieces.
+     * @param attacker: The player whose pieces are attacking
+     * @param pos: The attacked square
+     * @param blockers: Occupancy bitboard used for bishop, rook and queen rays
+     * @return a bitboard of the attacking pieces
+     */
+    private long attackers(Color attacker, int pos, long blockers) {
+        long queens = pieceBoards[Piece.Queen.ordinal()];
+        long attackers = (Attacks.pawn(getOpponent(attacker), pos) & pieceBoards[Piece.Pawn.ordinal()])
+                | (Attacks.knight(pos) & pieceBoards[Piece.Knight.ordinal()])
+                | (Attacks.king(pos) & pieceBoards[Piece.King.ordinal()])
+                | (Attacks.bishop(pos, blockers) & (pieceBoards[Piece.Bishop.ordinal()] | queens))
+                | (Attacks.rook(pos, blockers) & (pieceBoards[Piece.Rook.ordinal()] | queens));
+        return attackers & colorBoards[attacker.ordinal()];
     }
 
     /**
      * Determine whether a particular move follows the basic rules of moving.
      * DOES NOT determine whether the move exposes the king.
      * @param player: the player who the piece belongs to
-     * @param pos: the position of the piece to be moved
-     * @param newPos: the position to move the piece to
+     * @param pos: the square of the piece to be moved
+     * @param newPos: the square to move the piece to
      * @return whether the move is possible.
      */
-    private boolean inMoveRange(Color player, Position pos, Position newPos) {
-        if (!pieceExists(player, pos) || pos.equals(newPos) || !canStopAt(player, newPos)) {
+    private boolean inMoveRange(Color player, int pos, int newPos) {
+        moveRangeChecks++;
+        if (!pieceExists(player, pos) || pos == newPos || !canStopAt(player, newPos)) {
             return false;
         }
         Piece pieceToMove = getPiece(player, pos);
         int initialY;
-        int dx = newPos.x - pos.x;
-        int dy = newPos.y - pos.y;
+        int dx = file(newPos) - file(pos);
+        int dy = rank(newPos) - rank(pos);
         switch (pieceToMove) {
             case Pawn:
                 int moveDirection = player == Color.White ? 1 : -1; // the direction a pawn can move: 1 is forward (white), -1 is backward (black)
                 initialY = player == Color.White ? 1 : boardSize - 2; // the initial y-position of a pawn
                 if (dy == moveDirection) {
                     if (dx == 0) {
-                        return canPassThrough(player, newPos);
-                    } else if (Math.abs(dx) == 1) {
+                        return canPassThrough(newPos);
+                    } else if ((Attacks.pawn(player, pos) & (1L << newPos)) != 0) {
                         // A pawn may only move diagonally by attacking or by en passant.
-                        return pieceExists(getOpponent(player), newPos) || newPos.equals(legalEnPassant);
+                        return pieceExists(getOpponent(player), newPos) || newPos == legalEnPassant;
                     }
                 } else if (dy == 2 * moveDirection && Math.abs(dx) == 0) {
                     // A pawn can double move only if it is in its initial position.
-                    return pos.y == initialY &&
-                            canPassThrough(player, new Position(pos.x, pos.y + moveDirection)) &&
-                            canPassThrough(player, newPos);
+                    return rank(pos) == initialY &&
+                            canPassThrough(pos + moveDirection * boardSize) &&
+                            canPassThrough(newPos);
                 }
                 return false;
             case Knight:
-                return ((Math.abs(dx) == 1 && Math.abs(dy) == 2) || (Math.abs(dx) == 2 && Math.abs(dy) == 1));
+                return (Attacks.knight(pos) & (1L << newPos)) != 0;
             case Bishop:
-                return canMoveDiagonally(player, pos, newPos);
+                return (Attacks.bishop(pos, occupied) & (1L << newPos)) != 0;
             case Rook:
-                return canMoveStraight(player, pos, newPos);
+                return (Attacks.rook(pos, occupied) & (1L << newPos)) != 0;
             case Queen:
-                return canMoveDiagonally(player, pos, newPos) || canMoveStraight(player, pos, newPos);
+                return (Attacks.queen(pos, occupied) & (1L << newPos)) != 0;
             case King:
                 initialY = player == Color.White ? 0 : boardSize - 1; //Initial y-position of the player's king
-                // Castling:
-                // In order for a player to castle, the following must hold:
-                // The king and rook involved in castling must not have moved (1)
-                // There may be no pieces in between the king and rook (2)
-                // The king may not be in check, or be attacked on the way to its new position (3)
-                if (Math.abs(dx) == 2 && Math.abs(dy) == 0) {
-                    if (dx == -2) { // Castle queenside
-                        return canCastle(player, Castle.Queenside) && // (1)
-                                canMoveStraight(player, pos, new Position(1, initialY)) && // (2)
-                                !isKingAttacked(player) && // (3)
-                                !isAttacked(player, new Position(pos.x - 1, initialY)) && // (3)
-                                !isAttacked(player, new Position(pos.x - 2, initialY)); // (3)
-                    } else if (dx == 2) { // Castle kingside
-                        return canCastle(player, Castle.Kingside) && // (1)
-                                canMoveStraight(player, pos, new Position(boardSize - 2, initialY)) && // (2)
-                                !isKingAttacked(player) && // (3)
-                                !isAttacked(player, new Position(pos.x + 1, initialY)) && // (3)
-                                !isAttacked(player, new Position(pos.x + 2, initialY)); // (3)
-                    }
+                if (Math.abs(dx) == 2 && dy == 0 && rank(pos) == initialY) {
+                    Castle side = dx > 0 ? Castle.Kingside : Castle.Queenside;
+                    return canCastle(player, side) && castlingAllowed(player, pos, side);
                 }
-                return ((Math.abs(dx) <= 1) && (Math.abs(dy) <= 1));
+                return (Attacks.king(pos) & (1L << newPos)) != 0;
         }
         return false;
     }
 
-    private boolean canMoveDiagonally(Color player, Position pos, Position newPos) {
-        int dx = newPos.x - pos.x;
-        int dy = newPos.y - pos.y;
-        return Math.abs(dx) == Math.abs(dy) && canGoTo(player, pos, newPos);
-    }
-
-    private boolean canMoveStraight(Color player, Position pos, Position newPos) {
-        int dx = newPos.x - pos.x;
-        int dy = newPos.y - pos.y;
-        return (Math.abs(dx) == 0 || Math.abs(dy) == 0) && canGoTo(player, pos, newPos);
-    }
-
-    private boolean canGoTo(Color player, Position pos, Position newPos) {
-        int dirX = signum(newPos.x - pos.x);
-        int dirY = signum(newPos.y - pos.y);
-        Position currentPos = new Position(pos.x + dirX, pos.y + dirY);
-        while (!currentPos.equals(newPos)) {
-            if (!canPassThrough(player, currentPos)) {
-                return false;
-            }
-            currentPos.set(currentPos.x + dirX, currentPos.y + dirY);
-        }
-        return canStopAt(player, newPos);
-    }
-
     /**
-     * Find the set of all possible moves for a certain piece.
-     * @param pos: the position of the piece to be moved
-     * @return the set of all legal moves
+     * Determine whether the king may castle to the given side, assuming the player still has the right to.
+     * @param player: the player castling
+     * @param pos: the square of the player's king
+     * @param side: the side to castle on
+     * @return whether castling is possible
      */
-    private Set<Position> possibleMoves(Color player, Position pos) {
-        Set<Position> moves = new HashSet<Position>();
-        Position newPos;
-        for (int y = 0; y < boardSize; y++) {
-            for (int x = 0; x < boardSize; x++) {
-                newPos = new Position(x, y);
-                if (inMoveRange(player, pos, newPos)) {
-                    moves.add(newPos);
-                }
-            }
-        }
-        return moves;
+    private boolean castlingAllowed(Color player, int pos, Castle side) {
+        // In order for a player to castle, the following must hold:
+        // The king and rook involved in castling must not have moved (1), checked by the caller
+        // There may be no pieces in between the king and rook (2)
+        // The king may not be in check, or be attacked on the way to its new position (3)
+        int direction = side == Castle.Kingside ? 1 : -1;
+        int rookPos = square(side == Castle.Kingside ? boardSize - 1 : 0, rank(pos));
+        return (occupied & Attacks.between(pos, rookPos)) == 0 && // (2)
+                !isKingAttacked(player) && // (3)
+                !isAttacked(player, pos + direction) && // (3)
+                !isAttacked(player, pos + 2 * direction); // (3)
     }
 
     /**
-     * Determine whether a non-knight piece of the given player's can "pass through" a given position
-     * i.e. a bishop moving diagonally or a rook moving horizontally through that position.
-     * @param player: The current player's color
-     * @param pos: The position to move through
+     * Determine whether a non-knight piece can "pass through" a given square
+     * i.e. a bishop moving diagonally or a rook moving horizontally through that square.
+     * @param pos: The square to move through
      * @return
      */
-    private boolean canPassThrough(Color player, Position pos) {
-        return !pieceExists(player, pos) && !pieceExists(getOpponent(player), pos);
+    private boolean canPassThrough(int pos) {
+        return (occupied & (1L << pos)) == 0;
     }
 
     /**
-     * Determine whether a piece of the given player's can stop at a given position.
-     * A piece may stop at a position if it can pass through it or attack it.
+     * Determine whether a piece of the given player's can stop at a given square.
+     * A piece may stop at a square if it can pass through it or attack it.
      * @param player: The current player's color
-     * @param pos: The position to stop at
+     * @param pos: The square to stop at
      * @return
      */
-    private boolean canStopAt(Color player, Position pos) {
+    private boolean canStopAt(Color player, int pos) {
         return !pieceExists(player, pos);
     }
 
-    private Map<Position, Piece> getPieces(Color player) {
-        return pieces.get(player);
-    }
-
-    private Piece getPiece(Color player, Position pos) {
-        return getPieces(player).get(pos);
+    private Piece getPiece(Color player, int pos) {
+        return pieceExists(player, pos) ? squares[pos] : null;
     }
 
-    private boolean pieceExists(Color player, Position pos) {
-        return getPieces(player).containsKey(pos);
+    private boolean pieceExists(Color player, int pos) {
+        return (colorBoards[player.ordinal()] & (1L << pos)) != 0;
     }
 
-    private void removePiece(Color player, Position pos) {
-        getPieces(player).remove(pos);
+    private void removePiece(Color player, int pos) {
+        long bit = 1L << pos;
+        colorBoards[player.ordinal()] &= ~bit;
+        pieceBoards[squares[pos].ordinal()] &= ~bit;
+        occupied &= ~bit;
+        Piece piece = squares[pos];
+        key ^= Zobrist.piece(player, piece, pos);
+        if (piece == Piece.Pawn) {
+            pawnKey ^= Zobrist.piece(player, piece, pos);
+        }
+        midgameScore -= Evaluation.midgame(player, piece, pos);
+        endgameScore -= Evaluation.endgame(player, piece, pos);
+        phase -= Evaluation.phase(piece);
+        if (accumulator != null) {
+            accumulator.remove(player, piece, pos);
+        }
+        squares[pos] = null;
     }
 
-    private void movePiece(Color player, Position pos, Position newPos) {
+    private void movePiece(Color player, int pos, int newPos) {
         Piece pieceMoved = getPiece(player, pos);
         removePiece(player, pos);
         addPiece(player, newPos, pieceMoved);
     }
 
-    private void addPiece(Color player, Position pos, Piece piece) {
-        getPieces(player).put(pos, piece);
+    private void addPiece(Color player, int pos, Piece piece) {
+        long bit = 1L << pos;
+        colorBoards[player.ordinal()] |= bit;
+        pieceBoards[piece.ordinal()] |= bit;
+        occupied |= bit;
+        key ^= Zobrist.piece(player, piece, pos);
+        if (piece == Piece.Pawn) {
+            pawnKey ^= Zobrist.piece(player, piece, pos);
+        }
+        midgameScore += Evaluation.midgame(player, piece, pos);
+        endgameScore += Evaluation.endgame(player, piece, pos);
+        phase += Evaluation.phase(piece);
+        if (accumulator != null) {
+            accumulator.add(player, piece, pos);
+        }
+        squares[pos] = piece;
         if (piece == Piece.King) {
-            kings.put(player, pos);
+            kings[player.ordinal()] = pos;
         }
     }
 
-    private void disableCastle(Color player, Castle side) {
-        canCastle.get(player).put(side, false);
+    private boolean canCastle(Color player, Castle side) {
+        return (castlingRights & castleBit(player, side)) != 0;
     }
 
-    private boolean canCastle(Color player, Castle side) {
-        return canCastle.get(player).get(side);
+    private static int castleBit(Color player, Castle side) {
+        return 1 << (2 * player.ordinal() + side.ordinal());
     }
 
     /**
-     * Determine if a player's pawn at a position can be promoted.
-     * @param color: The current player's color
-     * @param pos: The piece's position
-     * @return Whether or not a promotion is possible
+     * Determine if a square is on the last rank for a player's pawns.
      */
-    private boolean canPromote(Color color, Position pos) {
-        return getPiece(color, pos) == Piece.Pawn && pos.y == (color == Color.White ? boardSize - 1 : 0);
+    private boolean canPromoteOn(Color color, int pos) {
+        return rank(pos) == (color == Color.White ? boardSize - 1 : 0);
+    }
+
+    private int square(int x, int y) {
+        return y * boardSize + x;
+    }
+
+    private int file(int pos) {
+        return pos % boardSize;
+    }
+
+    private int rank(int pos) {
+        return pos / boardSize;
     }
 
     public String boardAsString() {
         StringBuilder boardString = new StringBuilder();
-        Position pos = new Position(0, 0);
         for (int y = boardSize - 1; y >= 0; y--) {
             boardString.append(y);
             boardString.append("|");
             for (int x = 0; x < boardSize; x++) {
-                pos.set(x, y);
+                int pos = square(x, y);
                 if (pieceExists(Color.White, pos)) {
                     boardString.append(pieceAsString(getPiece(Color.White, pos)).toUpperCase());
                 } else if (pieceExists(Color.Black, pos)) {
@@ -473,4 +1329,48 @@ public class Board {
     public GameState getState() {
         return state;
     }
+
+    public Color getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * @return the piece on a square (y * 8 + x), or null if the square is empty
+     */
+    public Piece pieceAt(int pos) {
+        return squares[pos];
+    }
+
+    /**
+     * @return a bitboard of the squares (bit y * 8 + x) holding the given player's pieces of the given type
+     */
+    public long getBitboard(Color player, Piece piece) {
+        return colorBoards[player.ordinal()] & pieceBoards[piece.ordinal()];
+    }
+
+    public int getKingSquare(Color player) {
+        return kings[player.ordinal()];
+    }
+
+    /**
+     * @return the square a pawn can capture en passant this turn, or -1 if there is none
+     */
+    public int getEnPassantSquare() {
+        return legalEnPassant;
+    }
+
+    /**
+     * @return the castling rights still held: bit (2 * Color.ordinal() + Castle.ordinal()) for each
+     */
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
 }
@@ -0,0 +1,487 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The outcome of every position with one set of pieces, e.g. king and rook against king.
+ * Part of a Tablebase, which probes it; generated by TablebaseGenerator.
+ *
+ * Positions are stored from the point of view of the stronger side, which is called White here; positions where
+ * Black has the stronger pieces are looked up with the colors (and ranks) swapped. The board is reduced by symmetry:
+ * without pawns, White's king is moved into the triangle a1-d1-d4 by reflecting and rotating the board (8 ways),
+ * and with pawns, onto files a-d by mirroring it. The index of a position is, most significant first,
+ * the player to move, the square of White's king within that region, and the squares of the other pieces
+ * in "slot" order: Black's king, then White's other pieces, then Black's, each side's from queen down to pawn.
+ * A pawn's square is counted among the 48 of ranks 2 to 7 only, and any other piece's among all 64.
+ * Identical pieces are put in square order and, when a king on the diagonal leaves two ways to reduce the board,
+ * the smaller index wins, so every position has a single canonical index; all other indices are marked invalid.
+ *
+ * Each entry is a code: 0 for a draw, 1-127 for a win by the player to move with mate in that many moves,
+ * 0x80 + n for a loss with mate in n moves (0x80 itself: checkmated), and 0xFF for an invalid index.
+ * Distances ignore the fifty-move rule.
+ *
+ * While a table is generated its entries take a byte each, so that threads can set different entries at once.
+ * Once it is complete, pack() stores each entry in the fewest bits that tell apart the codes the table uses:
+ * KRvK, with mates of up to 16 moves, needs 6 bits per position; KBvK, only draws and invalid indices, needs 1.
+ *
+ * File format, big-endian: a 296-byte header (the magic number, the version, the number of entries, the table's
+ * name, e.g. "KRvK", padded with zeros to 16 bytes, the bits per entry, the number of codes used and the codes,
+ * padded to 256 bytes) followed by the packed entries, the first in the highest bits of the first byte,
+ * and a byte of padding. Files are memory-mapped when read.
+ */
+final class EndgameTable {
+
+    static final int magic = 0x43544231; // "CTB1"
+    static final int version = 2;
+    static final int headerSize = 296;
+    private static final int nameSize = 16;
+    private static final int bitsOffset = 32;
+    private static final int codesOffset = 40; // after the number of codes
+
+    static final int draw = 0;
+    static final int lossFlag = 0x80;
+    static final int maxWinMoves = 0x7F;
+    static final int maxLossMoves = 0x7D;
+    static final int unresolved = 0xFE; // only while the table is being generated
+    static final int invalid = 0xFF;
+
+    static final int maxPieces = 5;
+    private static final char[] pieceLetters = {'P', 'N', 'B', 'R', 'Q'}; // by Piece.ordinal()
+
+    // The ways to reflect or rotate the board: transforms[t][square] is where the square goes.
+    private static final int[][] transforms = new int[8][64];
+    private static final int[] pawnlessRegion = new int[64]; // index within the a1-d1-d4 triangle, or -1
+    private static final int[] pawnRegion = new int[64]; // index within files a-d, or -1
+
+    static {
+        Arrays.fill(pawnlessRegion, -1);
+        Arrays.fill(pawnRegion, -1);
+        int pawnless = 0;
+        int pawns = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int x = sq % 8;
+            int y = sq / 8;
+            int[] images = {sq, 7 - x + 8 * y, x + 8 * (7 - y), 63 - sq, y + 8 * x, 7 - y + 8 * x, y + 8 * (7 - x), 63 - (y + 8 * x)};
+            for (int t = 0; t < transforms.length; t++) {
+                transforms[t][sq] = images[t];
+            }
+            if (x < 4) {
+                pawnRegion[sq] = pawns++;
+                if (y <= x) {
+                    pawnlessRegion[sq] = pawnless++;
+                }
+            }
+        }
+    }
+
+    final String name;
+    final long materialKey; // see materialKey(Board)
+    final int count; // the number of pieces, kings included
+    final Color[] colors; // by slot
+    final Piece[] pieces; // by slot
+    final int size; // the number of entries
+    private final int[] groupStart; // the first slot holding the same color and piece type as each slot
+    private final int[] radix; // the number of squares counted for the piece in each slot (after the first)
+    private final int transformCount;
+    private final int[] region;
+    private final int[] regionSquares;
+    private final ByteBuffer buffer; // a byte per entry while generating; once packed, the header and the entries
+    private final int bits; // bits per packed entry, or 0 while generating
+    private final int[] codes; // the code of each packed value, or null while generating
+
+    /**
+     * Create an empty table, every entry unresolved, to be filled in by TablebaseGenerator.
+     * @param materialKey: the pieces, with White the stronger side; see materialKey(Board)
+     * @throws IllegalArgumentException if the table has too many pieces, or its entries would take more than
+     * half the heap while it is generated
+     */
+    EndgameTable(long materialKey) {
+        this(materialKey, null);
+    }
+
+    private EndgameTable(long materialKey, ByteBuffer buffer) {
+        this.materialKey = materialKey;
+        name = name(materialKey);
+        int total = 2;
+        boolean pawns = false;
+        for (int color = 0; color < 2; color++) {
+            for (int piece = 0; piece < Piece.King.ordinal(); piece++) {
+                total += pieceCount(materialKey, color, piece);
+            }
+            pawns |= pieceCount(materialKey, color, Piece.Pawn.ordinal()) > 0;
+        }
+        if (total > maxPieces) {
+            throw new IllegalArgumentException("Tables have at most " + maxPieces + " pieces: " + name);
+        }
+        count = total;
+        colors = new Color[count];
+        pieces = new Piece[count];
+        groupStart = new int[count];
+        radix = new int[count];
+        colors[0] = Color.White;
+        colors[1] = Color.Black;
+        pieces[0] = pieces[1] = Piece.King;
+        groupStart[1] = 1;
+        int slot = 2;
+        for (int color = 0; color < 2; color++) {
+            for (int piece = Piece.Queen.ordinal(); piece >= 0; piece--) {
+                int first = slot;
+                for (int i = pieceCount(materialKey, color, piece); i > 0; i--) {
+                    colors[slot] = Color.values()[color];
+                    pieces[slot] = Piece.values()[piece];
+                    groupStart[slot++] = first;
+                }
+            }
+        }
+        transformCount = pawns ? 2 : transforms.length;
+        region = pawns ? pawnRegion : pawnlessRegion;
+        int regionSize = pawns ? 32 : 10;
+        regionSquares = new int[regionSize];
+        for (int sq = 0; sq < 64; sq++) {
+            if (region[sq] >= 0) {
+                regionSquares[region[sq]] = sq;
+            }
+        }
+        long entries = 2 * regionSize;
+        for (int i = 1; i < count; i++) {
+            radix[i] = pieces[i] == Piece.Pawn ? 48 : 64;
+            entries *= radix[i];
+        }
+        size = (int) entries;
+        if (buffer == null) {
+            // The generator also keeps a bit per entry, and the heap must hold the smaller tables as well.
+            if (entries + entries / 8 > Runtime.getRuntime().maxMemory() / 2) {
+                throw new IllegalArgumentException("Not enough memory to generate " + name + ": "
+                        + (entries + entries / 8 >> 20) + " MB needed");
+            }
+            buffer = ByteBuffer.allocate(size);
+            Arrays.fill(buffer.array(), (byte) unresolved);
+            bits = 0;
+            codes = null;
+        } else {
+            bits = buffer.getInt(bitsOffset);
+            codes = new int[buffer.getInt(bitsOffset + 4)];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = buffer.get(codesOffset + i) & 0xFF;
+            }
+        }
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the number of bytes the entries of a packed table take, padding included
+     */
+    private static long packedSize(long entries, int bits) {
+        return (entries * bits + 7) / 8 + 1;
+    }
+
+    /**
+     * Map a table file.
+     * @throws IOException if the file cannot be read or is not a table
+     */
+    static EndgameTable load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < headerSize || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Not an endgame table: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            int bits = buffer.getInt(bitsOffset);
+            int codeCount = buffer.getInt(bitsOffset + 4);
+            if (buffer.getInt(0) != magic || buffer.getInt(4) != version || bits < 1 || bits > 8
+                    || codeCount < 1 || codeCount > 1 << bits || buffer.getLong(8) < 0
+                    || packedSize(buffer.getLong(8), bits) != fileSize - headerSize) {
+                throw new IOException("Not an endgame table, or from another version: " + file);
+            }
+            byte[] name = new byte[nameSize];
+            for (int i = 0; i < nameSize; i++) {
+                name[i] = buffer.get(16 + i);
+            }
+            long key;
+            try {
+                key = parse(new String(name, StandardCharsets.US_ASCII).trim());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Bad endgame table name in " + file + ": " + e.getMessage());
+            }
+            EndgameTable table = new EndgameTable(key, buffer);
+            if (table.size != buffer.getLong(8)) {
+                throw new IOException("Endgame table has the wrong size: " + file);
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Pack a generated table into the fewest bits per entry.
+     * @return the packed table, to be probed and written instead of this one
+     */
+    EndgameTable pack() {
+        if (codes != null) {
+            return this;
+        }
+        int[] values = new int[256]; // the packed value of each code, plus one; 0 for codes not used
+        int codeCount = 0;
+        for (int index = 0; index < size; index++) {
+            int code = code(index);
+            if (values[code] == 0) {
+                values[code] = ++codeCount;
+            }
+        }
+        int packedBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(codeCount - 1));
+        ByteBuffer packed = ByteBuffer.allocate((int) (headerSize + packedSize(size, packedBits)));
+        packed.putInt(magic).putInt(version).putLong(size).put(Arrays.copyOf(name.getBytes(StandardCharsets.US_ASCII), nameSize));
+        packed.putInt(packedBits).putInt(codeCount);
+        for (int code = 0; code < values.length; code++) {
+            if (values[code] != 0) {
+                packed.put(codesOffset + values[code] - 1, (byte) code);
+            }
+        }
+        packed.position(headerSize);
+        long pending = 0; // bits not yet written, in the low pendingBits bits
+        int pendingBits = 0;
+        for (int index = 0; index < size; index++) {
+            pending = pending << packedBits | (values[code(index)] - 1);
+            pendingBits += packedBits;
+            if (pendingBits >= 8) {
+                pendingBits -= 8;
+                packed.put((byte) (pending >>> pendingBits));
+            }
+        }
+        if (pendingBits > 0) {
+            packed.put((byte) (pending << (8 - pendingBits)));
+        }
+        return new EndgameTable(materialKey, packed);
+    }
+
+    /**
+     * Write the table, which must have been packed.
+     */
+    void write(Path file) throws IOException {
+        if (codes == null) {
+            throw new IllegalStateException("Table " + name + " is not packed");
+        }
+        ByteBuffer all = buffer.duplicate();
+        all.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (all.hasRemaining()) {
+                channel.write(all);
+            }
+        }
+    }
+
+    int code(int index) {
+        if (codes == null) {
+            return buffer.get(index) & 0xFF;
+        }
+        // An entry spans at most two bytes, and the padding byte lets the last one be read as two.
+        long bit = (long) index * bits;
+        int word = buffer.getShort(headerSize + (int) (bit >>> 3)) & 0xFFFF;
+        return codes[word >>> (16 - bits - (int) (bit & 7)) & ((1 << bits) - 1)];
+    }
+
+    /**
+     * Set an entry of a table being generated. Different entries may be set by different threads at once.
+     */
+    void set(int index, int code) {
+        buffer.put(index, (byte) code);
+    }
+
+    /**
+     * Find the canonical index of a position.
+     * @param squares: the square of the piece in each slot; not changed
+     * @param player: the player to move, 0 for White
+     * @param work: scratch space, at least count long
+     */
+    int indexOf(int[] squares, int player, int[] work) {
+        int best = Integer.MAX_VALUE;
+        for (int t = 0; t < transformCount; t++) {
+            int[] transform = transforms[t];
+            if (region[transform[squares[0]]] < 0) {
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                int sq = transform[squares[i]];
+                int j = i;
+                for (; j > groupStart[i] && work[j - 1] > sq; j--) {
+                    work[j] = work[j - 1];
+                }
+                work[j] = sq;
+            }
+            int index = player * regionSquares.length + region[work[0]];
+            for (int i = 1; i < count; i++) {
+                index = radix[i] == 64 ? index << 6 | work[i] : index * 48 + work[i] - 8;
+            }
+            best = Math.min(best, index);
+        }
+        return best;
+    }
+
+    /**
+     * Find the squares of the pieces and the player to move of an index; the reverse of indexOf().
+     * @return the player to move, 0 for White
+     */
+    int decode(int index, int[] squares) {
+        for (int i = count - 1; i > 0; i--) {
+            if (radix[i] == 64) {
+                squares[i] = index & 63;
+                index >>>= 6;
+            } else {
+                squares[i] = index % 48 + 8;
+                index /= 48;
+            }
+        }
+        squares[0] = regionSquares[index % regionSquares.length];
+        return index / regionSquares.length;
+    }
+
+    /**
+     * Find the index of the board's position, which must have this table's pieces.
+     * @param swapColors: whether Black has the pieces this table gives White
+     * @param squares: filled with the square of the piece in each slot, as seen by the table; at least count long
+     * @param work: scratch space, at least count long
+     */
+    int index(Board board, boolean swapColors, int[] squares, int[] work) {
+        long bits = 0;
+        for (int i = 0; i < count; i++) {
+            if (groupStart[i] == i) {
+                bits = board.getBitboard(swapColors ? opposite(colors[i]) : colors[i], pieces[i]);
+            }
+            int sq = Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            squares[i] = swapColors ? sq ^ 56 : sq;
+        }
+        int player = (board.getCurrentPlayer() == Color.White) != swapColors ? 0 : 1;
+        return indexOf(squares, player, work);
+    }
+
+    /**
+     * Describe the board's pieces as a key: 4 bits for the number of each type of piece other than the king,
+     * at bit 4 * (5 * color + piece), counting colors and pieces by their ordinals.
+     */
+    static long materialKey(Board board) {
+        long key = 0;
+        for (Color color : Color.values()) {
+            for (int piece = 0; piece < Piece.King.ordinal(); piece++) {
+                key |= (long) Long.bitCount(board.getBitboard(color, Piece.values()[piece])) << shift(color.ordinal(), piece);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return the material key with the colors swapped
+     */
+    static long swapColors(long materialKey) {
+        return (materialKey & 0xFFFFFL) << 20 | materialKey >>> 20;
+    }
+
+    static int pieceCount(long materialKey, int color, int piece) {
+        return (int) (materialKey >>> shift(color, piece)) & 0xF;
+    }
+
+    static long withPiece(long materialKey, int color, int piece, int change) {
+        return materialKey + ((long) change << shift(color, piece));
+    }
+
+    /**
+     * @return the material key with the stronger side as White: more material, counting a queen as 9, a rook as 5,
+     * a minor piece as 3 and a pawn as 1, or the same material and more pieces, or a higher key
+     */
+    static long canonical(long materialKey) {
+        long swapped = swapColors(materialKey);
+        int[] values = {1, 3, 3, 5, 9};
+        int balance = 0;
+        int pieceBalance = 0;
+        for (int piece = 0; piece < values.length; piece++) {
+            int difference = pieceCount(materialKey, 0, piece) - pieceCount(materialKey, 1, piece);
+            balance += values[piece] * difference;
+            pieceBalance += difference;
+        }
+        if (balance != 0) {
+            return balance > 0 ? materialKey : swapped;
+        }
+        if (pieceBalance != 0) {
+            return pieceBalance > 0 ? materialKey : swapped;
+        }
+        return Math.max(materialKey, swapped);
+    }
+
+    /**
+     * Parse the name of a set of pieces, e.g. "KRvK" or "KBNvK".
+     * @return the material key, with the colors as given
+     * @throws IllegalArgumentException if the name is malformed
+     */
+    static long parse(String name) {
+        String[] sides = name.split("v", -1);
+        if (sides.length != 2) {
+            throw new IllegalArgumentException("Expected e.g. KRvK: " + name);
+        }
+        long key = 0;
+        for (int color = 0; color < 2; color++) {
+            if (!sides[color].matches("K[QRBNP]*")) {
+                throw new IllegalArgumentException("Expected e.g. KRvK: " + name);
+            }
+            for (int i = 1; i < sides[color].length(); i++) {
+                int piece = new String(pieceLetters).indexOf(sides[color].charAt(i));
+                if (pieceCount(key, color, piece) == 8) {
+                    throw new IllegalArgumentException("Too many pieces: " + name);
+                }
+                key = withPiece(key, color, piece, 1);
+            }
+        }
+        return key;
+    }
+
+    static String name(long materialKey) {
+        StringBuilder builder = new StringBuilder();
+        for (int color = 0; color < 2; color++) {
+            builder.append(color == 0 ? "K" : "vK");
+            for (int piece = Piece.Queen.ordinal(); piece >= 0; piece--) {
+                for (int i = pieceCount(materialKey, color, piece); i > 0; i--) {
+                    builder.append(pieceLetters[piece]);
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    static boolean isWin(int code) {
+        return code >= 1 && code <= maxWinMoves;
+    }
+
+    static boolean isLoss(int code) {
+        return code >= lossFlag && code <= lossFlag + maxLossMoves;
+    }
+
+    /**
+     * @return the number of moves until mate of a win or loss code
+     */
+    static int moves(int code) {
+        return code & 0x7F;
+    }
+
+    /**
+     * @return the number of plies until mate of a win or loss code
+     */
+    static int plies(int code) {
+        return isWin(code) ? 2 * moves(code) - 1 : 2 * moves(code);
+    }
+
+    static Color opposite(Color color) {
+        return color == Color.White ? Color.Black : Color.White;
+    }
+
+    private static int shift(int color, int piece) {
+        return 4 * (5 * color + piece);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
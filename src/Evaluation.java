@@ -0,0 +1,236 @@
+/**
+ * Static evaluation of a position in centipawns: material, piece-square tables and pawn structure.
+ * Every term has a middlegame and an endgame value, blended by the game phase (how much non-pawn material is left).
+ * Board keeps the material and piece-square sums up to date as pieces are added and removed,
+ * so evaluating a leaf only adds the pawn structure, which is cached by pawn key.
+ * An Evaluation holds its own cache, so each search thread needs its own instance.
+ */
+public class Evaluation {
+
+    public static final int maxPhase = 24; // the phase with all pieces on the board; 0 is a pawn (or bare king) endgame
+
+    private static final int[] phaseWeights = {0, 1, 1, 2, 4, 0}; // indexed by Piece.ordinal()
+    private static final int[] midgameValues = {82, 337, 365, 477, 1025, 0};
+    private static final int[] endgameValues = {94, 281, 297, 512, 936, 0};
+
+    // Piece-square tables from White's point of view, drawn as a board: the first row is the eighth rank.
+    private static final int[] pawnTable = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             10,  10,  20,  30,  30,  20,  10,  10,
+              5,   5,  10,  25,  25,  10,   5,   5,
+              0,   0,   0,  20,  20,   0,   0,   0,
+              5,  -5, -10,   0,   0, -10,  -5,   5,
+              5,  10,  10, -20, -20,  10,  10,   5,
+              0,   0,   0,   0,   0,   0,   0,   0};
+    private static final int[] pawnEndgameTable = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             80,  80,  80,  80,  80,  80,  80,  80,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             30,  30,  30,  30,  30,  30,  30,  30,
+             15,  15,  15,  15,  15,  15,  15,  15,
+              5,   5,   5,   5,   5,   5,   5,   5,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0};
+    private static final int[] knightTable = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50};
+    private static final int[] bishopTable = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,   5,  10,  10,   5,   5, -10,
+            -10,   0,  10,  10,  10,  10,   0, -10,
+            -10,  10,  10,  10,  10,  10,  10, -10,
+            -10,   5,   0,   0,   0,   0,   5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20};
+    private static final int[] rookTable = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+              5,  10,  10,  10,  10,  10,  10,   5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+              0,   0,   0,   5,   5,   0,   0,   0};
+    private static final int[] queenTable = {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+              0,   0,   5,   5,   5,   5,   0,  -5,
+            -10,   5,   5,   5,   5,   5,   0, -10,
+            -10,   0,   5,   0,   0,   0,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20};
+    private static final int[] kingTable = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+             20,  20,   0,   0,   0,   0,  20,  20,
+             20,  30,  10,   0,   0,  10,  30,  20};
+    private static final int[] kingEndgameTable = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10,   0,   0, -10, -20, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -30,   0,   0,   0,   0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50};
+
+    // Material plus piece-square value of each piece on each square, signed so that Black's pieces count negative.
+    // Indexed by (Color.ordinal() * 6 + Piece.ordinal()), then square (y * 8 + x).
+    private static final int[][] midgameSquares = new int[12][64];
+    private static final int[][] endgameSquares = new int[12][64];
+
+    // Pawn structure terms, as {midgame, endgame}.
+    private static final int[] doubledPawn = {-10, -20}; // per pawn beyond the first on a file
+    private static final int[] isolatedPawn = {-10, -15}; // per pawn with no friendly pawns on neighbouring files
+    private static final int[] passedPawnMidgame = {0, 5, 10, 20, 35, 60, 100, 0}; // indexed by rank from the pawn's own side
+    private static final int[] passedPawnEndgame = {0, 10, 20, 40, 70, 120, 200, 0};
+
+    private static final long[] fileMasks = new long[8];
+    private static final long[] neighbourFileMasks = new long[8];
+    private static final long[][] passedPawnMasks = new long[2][64]; // squares that must be free of enemy pawns
+
+    static {
+        int[][] midgameTables = {pawnTable, knightTable, bishopTable, rookTable, queenTable, kingTable};
+        int[][] endgameTables = {pawnEndgameTable, knightTable, bishopTable, rookTable, queenTable, kingEndgameTable};
+        for (Piece piece : Piece.values()) {
+            int p = piece.ordinal();
+            for (int sq = 0; sq < 64; sq++) {
+                int whiteIndex = (7 - sq / 8) * 8 + sq % 8; // tables are drawn with the eighth rank first
+                int blackIndex = sq; // Black's view is the same table mirrored vertically
+                midgameSquares[p][sq] = midgameValues[p] + midgameTables[p][whiteIndex];
+                endgameSquares[p][sq] = endgameValues[p] + endgameTables[p][whiteIndex];
+                midgameSquares[6 + p][sq] = -(midgameValues[p] + midgameTables[p][blackIndex]);
+                endgameSquares[6 + p][sq] = -(endgameValues[p] + endgameTables[p][blackIndex]);
+            }
+        }
+        for (int file = 0; file < 8; file++) {
+            fileMasks[file] = 0x0101010101010101L << file;
+        }
+        for (int file = 0; file < 8; file++) {
+            neighbourFileMasks[file] = (file > 0 ? fileMasks[file - 1] : 0) | (file < 7 ? fileMasks[file + 1] : 0);
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            long files = fileMasks[sq % 8] | neighbourFileMasks[sq % 8];
+            int rank = sq / 8;
+            passedPawnMasks[Color.White.ordinal()][sq] = rank == 7 ? 0 : files & (-1L << (8 * (rank + 1)));
+            passedPawnMasks[Color.Black.ordinal()][sq] = rank == 0 ? 0 : files & (-1L >>> (8 * (8 - rank)));
+        }
+    }
+
+    // Pawn structure cache, indexed by the low bits of the pawn key.
+    private static final int pawnTableSize = 1 << 14;
+    private final long[] pawnKeys = new long[pawnTableSize];
+    private final int[] pawnMidgame = new int[pawnTableSize];
+    private final int[] pawnEndgame = new int[pawnTableSize];
+
+    /**
+     * The middlegame value of a piece on a square: positive for White's pieces, negative for Black's.
+     */
+    public static int midgame(Color player, Piece piece, int sq) {
+        return midgameSquares[player.ordinal() * 6 + piece.ordinal()][sq];
+    }
+
+    public static int endgame(Color player, Piece piece, int sq) {
+        return endgameSquares[player.ordinal() * 6 + piece.ordinal()][sq];
+    }
+
+    /**
+     * How much a piece contributes to the game phase.
+     */
+    public static int phase(Piece piece) {
+        return phaseWeights[piece.ordinal()];
+    }
+
+    /**
+     * Evaluate a position from the point of view of the player to move,
+     * using the board's incrementally updated sums and the pawn structure cache.
+     */
+    public int evaluate(Board board) {
+        long pawnKey = board.getPawnKey();
+        int index = (int) pawnKey & (pawnTableSize - 1);
+        if (pawnKeys[index] != pawnKey) {
+            pawnKeys[index] = pawnKey;
+            pawnMidgame[index] = pawnStructure(board, 0);
+            pawnEndgame[index] = pawnStructure(board, 1);
+        }
+        int score = taper(board.getMidgameScore() + pawnMidgame[index], board.getEndgameScore() + pawnEndgame[index], board.getPhase());
+        return board.getCurrentPlayer() == Color.White ? score : -score;
+    }
+
+    /**
+     * Evaluate a position like evaluate(), but add up every piece from scratch instead of using the board's sums
+     * or the cache. Much slower; used to check the incremental sums.
+     */
+    public static int evaluateFromScratch(Board board) {
+        int midgame = pawnStructure(board, 0);
+        int endgame = pawnStructure(board, 1);
+        int phase = 0;
+        for (Color player : Color.values()) {
+            for (Piece piece : Piece.values()) {
+                long pieces = board.getBitboard(player, piece);
+                while (pieces != 0) {
+                    int sq = Long.numberOfTrailingZeros(pieces);
+                    pieces &= pieces - 1;
+                    midgame += midgame(player, piece, sq);
+                    endgame += endgame(player, piece, sq);
+                    phase += phase(piece);
+                }
+            }
+        }
+        int score = taper(midgame, endgame, phase);
+        return board.getCurrentPlayer() == Color.White ? score : -score;
+    }
+
+    private static int taper(int midgame, int endgame, int phase) {
+        phase = Math.min(phase, maxPhase); // promotions can push the phase past its starting value
+        return (midgame * phase + endgame * (maxPhase - phase)) / maxPhase;
+    }
+
+    /**
+     * Score doubled, isolated and passed pawns for both players, White positive.
+     * @param stage: 0 for the middlegame value, 1 for the endgame value
+     */
+    private static int pawnStructure(Board board, int stage) {
+        int score = 0;
+        for (Color player : Color.values()) {
+            Color opponent = player == Color.White ? Color.Black : Color.White;
+            long pawns = board.getBitboard(player, Piece.Pawn);
+            long enemyPawns = board.getBitboard(opponent, Piece.Pawn);
+            int sign = player == Color.White ? 1 : -1;
+            int side = 0;
+            for (int file = 0; file < 8; file++) {
+                int onFile = Long.bitCount(pawns & fileMasks[file]);
+                if (onFile > 1) {
+                    side += doubledPawn[stage] * (onFile - 1);
+                }
+                if (onFile > 0 && (pawns & neighbourFileMasks[file]) == 0) {
+                    side += isolatedPawn[stage] * onFile;
+                }
+            }
+            long remaining = pawns;
+            while (remaining != 0) {
+                int sq = Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                if ((passedPawnMasks[player.ordinal()][sq] & enemyPawns) == 0) {
+                    int rank = player == Color.White ? sq / 8 : 7 - sq / 8;
+                    side += stage == 0 ? passedPawnMidgame[rank] : passedPawnEndgame[rank];
+                }
+            }
+            score += sign * side;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for each game Board.move() brings to an end.
+ */
+@Name("chess.GameEnd")
+@Label("Game End")
+@Category("Chess")
+@Description("A game ended by a move")
+class GameEndEvent extends jdk.jfr.Event {
+    @Label("Result")
+    String result; // a GameState
+
+    @Label("Full Moves")
+    int fullmoveNumber;
+
+    @Label("Position")
+    String position; // FEN
+}
@@ -0,0 +1,274 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hosts many games at once for clients on the same machine, over a line-based text protocol on a local socket.
+ * Each connection is served by its own thread, a virtual thread where the JDK has them (Java 21 and later),
+ * so a client waiting for a reply costs only a small stack. Any number of games can be played over one
+ * connection, and a game can be reached from any connection; requests for the same game are handled one at a time.
+ * An idle game costs little: it is kept as a Snapshot and the keys of the positions since the last capture or
+ * pawn move (see Board.getEarlierKeys()), so that a threefold repetition played over several requests ends the
+ * game, and a Board is set up from them for each request.
+ *
+ * Requests, one per line, and their replies:
+ *   new [fen]          ok id                  start a game, from the start position unless a FEN is given
+ *   move id move       ok state fen, illegal  play a move in long algebraic notation, e.g. "e2e4" or "e7e8q";
+ *                                             a promotion must name its piece
+ *   show id            ok state fen           the game's state (a GameState) and position
+ *   close id           ok                     forget the game
+ *   quit                                      close the connection
+ * Malformed requests, unknown games and moves after the end of a game get "error" and a message.
+ */
+public class GameServer implements Closeable {
+
+    public static final int defaultPort = 7878;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService threads;
+    private final ConcurrentHashMap<Long, Game> games = new ConcurrentHashMap<Long, Game>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private volatile boolean closed;
+
+    /**
+     * A hosted game. The lock serializes requests for it; it is a ReentrantLock rather than a synchronized block
+     * because a virtual thread blocked in synchronized code holds on to its carrier thread.
+     */
+    private static final class Game {
+        final ReentrantLock lock = new ReentrantLock();
+        // Both only used under the lock.
+        Snapshot position;
+        long[] earlierKeys;
+
+        Game(Board board) {
+            save(board);
+        }
+
+        Board toBoard() {
+            Board board = position.toBoard();
+            board.setEarlierKeys(earlierKeys);
+            return board;
+        }
+
+        void save(Board board) {
+            position = board.snapshot();
+            earlierKeys = board.getEarlierKeys();
+        }
+    }
+
+    /**
+     * Start a server on the loopback interface, with a virtual thread per connection if possible.
+     * @param port: the port to listen on, or 0 for any free port (see getPort())
+     */
+    public GameServer(int port) throws IOException {
+        this(port, newThreadPerTaskExecutor());
+    }
+
+    /**
+     * Start a server on the loopback interface, serving each connection with a task on the given executor.
+     * @param port: the port to listen on, or 0 for any free port
+     * @param threads: runs the task accepting connections and one task per connection; shut down by close()
+     */
+    public GameServer(int port, ExecutorService threads) throws IOException {
+        this.threads = threads;
+        serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        threads.execute(new Runnable() {
+            public void run() {
+                acceptConnections();
+            }
+        });
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of games being hosted
+     */
+    public int getGameCount() {
+        return games.size();
+    }
+
+    /**
+     * Stop accepting connections and close the open ones. The games are forgotten.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        threads.shutdownNow();
+        games.clear();
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            threads.execute(new Runnable() {
+                public void run() {
+                    serve(socket);
+                }
+            });
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true); // replies are small and a client waits for each one
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            String line;
+            while (!closed && (line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.equals("quit")) {
+                    break;
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                out.write(handle(line));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away; there is nobody left to tell.
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed.
+            }
+        }
+    }
+
+    /**
+     * Carry out one request and return the reply, without the line break.
+     */
+    String handle(String request) {
+        String[] words = request.split("\\s+", 2);
+        String command = words[0];
+        String argument = words.length > 1 ? words[1] : "";
+        try {
+            if (command.equals("new")) {
+                Board board = argument.isEmpty() ? new Board() : new Board(argument);
+                long id = nextId.getAndIncrement();
+                games.put(id, new Game(board));
+                return "ok " + id;
+            }
+            if (!command.equals("move") && !command.equals("show") && !command.equals("close")) {
+                return "error unknown request: " + request;
+            }
+            String[] arguments = argument.split("\\s+");
+            Game game = games.get(parseId(arguments[0]));
+            if (game == null) {
+                return "error no game " + arguments[0];
+            }
+            if (command.equals("move") && arguments.length == 2) {
+                return move(game, arguments[1]);
+            } else if (command.equals("show") && arguments.length == 1) {
+                return show(game);
+            } else if (command.equals("close") && arguments.length == 1) {
+                games.remove(parseId(arguments[0]));
+                return "ok";
+            }
+            return "error wrong arguments: " + request;
+        } catch (IllegalArgumentException e) {
+            return "error " + e.getMessage();
+        }
+    }
+
+    private String move(Game game, String move) {
+        if (!move.matches("[a-h][1-8][a-h][1-8][qrbn]?")) {
+            return "error bad move: " + move;
+        }
+        int from = (move.charAt(1) - '1') * 8 + move.charAt(0) - 'a';
+        int to = (move.charAt(3) - '1') * 8 + move.charAt(2) - 'a';
+        Piece promotion = move.length() == 5 ? Piece.values()["pnbrqk".indexOf(move.charAt(4))] : null;
+        game.lock.lock();
+        try {
+            Board board = game.toBoard();
+            if (board.getState() != GameState.Ongoing) {
+                return "error the game is over: " + board.getState();
+            }
+            boolean promotes = board.pieceAt(from) == Piece.Pawn && (to / 8 == 0 || to / 8 == 7);
+            if (promotes != (promotion != null)) {
+                return promotes ? "error a promotion must name its piece" : "illegal";
+            }
+            if (!board.move(from, to, promotion)) {
+                return "illegal";
+            }
+            game.save(board);
+            return "ok " + board.getState() + " " + board.toFen();
+        } finally {
+            game.lock.unlock();
+        }
+    }
+
+    private String show(Game game) {
+        game.lock.lock();
+        try {
+            Board board = game.toBoard();
+            return "ok " + board.getState() + " " + board.toFen();
+        } finally {
+            game.lock.unlock();
+        }
+    }
+
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad game id: " + id);
+        }
+    }
+
+    /**
+     * An executor that starts a virtual thread per task where the JDK supports them, otherwise a daemon platform thread.
+     * Virtual threads are created reflectively, so that the server still builds and runs on older JDKs.
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "game-server");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Run a server until the process is killed, with RulesMetrics available over JMX. Argument: the port (default 7878).
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        RulesMetrics.register(); // so that monitoring can turn the metrics on without a restart
+        GameServer server = new GameServer(args.length > 0 ? Integer.parseInt(args[0]) : defaultPort);
+        System.out.println("Listening on port " + server.getPort());
+        Thread.currentThread().join(); // the server's threads are daemons
+    }
+}
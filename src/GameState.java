@@ -1,3 +1,14 @@
+/**
+ * How a game stands. Draw is a draw for a reason outside the board, e.g. agreed or given as a game's result;
+ * the other draws are detected by Board.
+ */
 public enum GameState {
-    Ongoing, WhiteWin, BlackWin, Draw
+    Ongoing, WhiteWin, BlackWin, Draw, Stalemate, ThreefoldRepetition, FiftyMoveRule;
+
+    /**
+     * @return whether the game is drawn, for any reason
+     */
+    public boolean isDraw() {
+        return this == Draw || this == Stalemate || this == ThreefoldRepetition || this == FiftyMoveRule;
+    }
 }
@@ -0,0 +1,161 @@
+/**
+ * The running score of a match between two players, from the point of view of the first, with the Elo difference
+ * it points to and a sequential probability ratio test (SPRT) of whether the first player is stronger.
+ * The test weighs hypothesis H0, "the first player is elo0 stronger", against H1, "it is elo1 stronger",
+ * and decides as soon as the log-likelihood ratio leaves the bounds set by the error rates alpha (accepting H1
+ * when H0 is true) and beta (accepting H0 when H1 is true); until then more games are needed.
+ * The likelihoods use the normal approximation of the mean game score. Results can be added from any thread.
+ */
+public class MatchStatistics {
+
+    public enum Decision {
+        Continue, AcceptH0, AcceptH1
+    }
+
+    private static final double confidence95 = 1.959964; // standard deviations either side of the mean
+
+    private final double elo0, elo1;
+    private final double lowerBound, upperBound;
+    private int wins, draws, losses;
+
+    /**
+     * Set up the test of a change that should gain 5 Elo against one that gains nothing, with 5% error rates.
+     */
+    public MatchStatistics() {
+        this(0, 5, 0.05, 0.05);
+    }
+
+    /**
+     * @param elo0: the Elo difference of H0
+     * @param elo1: the Elo difference of H1, greater than elo0
+     * @param alpha: the chance of accepting H1 when H0 is true
+     * @param beta: the chance of accepting H0 when H1 is true
+     */
+    public MatchStatistics(double elo0, double elo1, double alpha, double beta) {
+        if (!(elo1 > elo0) || !(alpha > 0 && alpha < 1) || !(beta > 0 && beta < 1)) {
+            throw new IllegalArgumentException("Need elo0 < elo1 and error rates between 0 and 1");
+        }
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Add a game.
+     * @param score: the first player's score: 1 for a win, 0.5 for a draw, 0 for a loss
+     */
+    public synchronized void add(double score) {
+        if (score == 1) {
+            wins++;
+        } else if (score == 0.5) {
+            draws++;
+        } else if (score == 0) {
+            losses++;
+        } else {
+            throw new IllegalArgumentException("Not a game score: " + score);
+        }
+    }
+
+    public synchronized int getWins() {
+        return wins;
+    }
+
+    public synchronized int getDraws() {
+        return draws;
+    }
+
+    public synchronized int getLosses() {
+        return losses;
+    }
+
+    public synchronized int getGames() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * @return the first player's mean score per game, or 0.5 before any games
+     */
+    public synchronized double score() {
+        int games = getGames();
+        return games == 0 ? 0.5 : (wins + 0.5 * draws) / games;
+    }
+
+    /**
+     * @return the Elo difference the score points to; infinite if one player won every game
+     */
+    public synchronized double elo() {
+        return elo(score());
+    }
+
+    /**
+     * @return half the width of the 95% confidence interval of elo(); infinite before any games
+     * or when the interval reaches a score of 0 or 1
+     */
+    public synchronized double eloMargin() {
+        int games = getGames();
+        if (games == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double deviation = confidence95 * Math.sqrt(variance() / games);
+        return (elo(score() + deviation) - elo(score() - deviation)) / 2;
+    }
+
+    /**
+     * @return the log-likelihood ratio of H1 against H0 for the games so far
+     */
+    public synchronized double llr() {
+        int games = getGames();
+        if (games == 0) {
+            return 0;
+        }
+        double score0 = expectedScore(elo0);
+        double score1 = expectedScore(elo1);
+        return games * (score1 - score0) * (2 * score() - score0 - score1) / (2 * variance());
+    }
+
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    public synchronized Decision decision() {
+        double llr = llr();
+        return llr <= lowerBound ? Decision.AcceptH0 : llr >= upperBound ? Decision.AcceptH1 : Decision.Continue;
+    }
+
+    /**
+     * @return the variance of a game's score; never less than one decisive game among draws would give,
+     * so that a match whose games all end alike still reaches a decision
+     */
+    private double variance() {
+        int games = getGames();
+        double mean = score();
+        double variance = (wins * (1 - mean) * (1 - mean) + draws * (0.5 - mean) * (0.5 - mean) + losses * mean * mean) / games;
+        return Math.max(variance, 0.25 / games);
+    }
+
+    /**
+     * @return the score expected of a player that much stronger, by the logistic Elo model
+     */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    static double elo(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        } else if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    public synchronized String toString() {
+        return String.format("Games %d: +%d =%d -%d, Elo %.1f +- %.1f, LLR %.2f (%.2f, %.2f) %s", getGames(), wins, draws,
+                losses, elo(), eloMargin(), llr(), lowerBound, upperBound, decision());
+    }
+}
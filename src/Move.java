@@ -0,0 +1,60 @@
+/**
+ * Moves encoded as ints so that they can be stored in primitive buffers.
+ * Bits 0-5 hold the square the piece moves from and bits 6-11 the square it moves to (y * 8 + x).
+ * Bits 12-14 hold the ordinal of the piece a pawn is promoted to, or 0 if the move is not a promotion.
+ */
+public final class Move {
+
+    public static final int none = 0; // never a real move, since the from and to squares are equal
+
+    private static final int squareMask = 0x3F;
+    private static final int toShift = 6;
+    private static final int promotionShift = 12;
+    private static final Piece[] pieceTypes = Piece.values();
+
+    private Move() {
+    }
+
+    public static int encode(int from, int to) {
+        return from | (to << toShift);
+    }
+
+    public static int encode(int from, int to, Piece promotion) {
+        return promotion == null ? encode(from, to) : encode(from, to) | (promotion.ordinal() << promotionShift);
+    }
+
+    public static int from(int move) {
+        return move & squareMask;
+    }
+
+    public static int to(int move) {
+        return (move >>> toShift) & squareMask;
+    }
+
+    /**
+     * @return the piece a pawn is promoted to by the move, or null if the move is not a promotion
+     */
+    public static Piece promotion(int move) {
+        int ordinal = (move >>> promotionShift) & 0x7;
+        return ordinal == 0 ? null : pieceTypes[ordinal];
+    }
+
+    /**
+     * Write a move in long algebraic notation, e.g. "e2e4" or "e7e8q".
+     */
+    public static String toString(int move) {
+        StringBuilder builder = new StringBuilder(5);
+        appendSquare(builder, from(move));
+        appendSquare(builder, to(move));
+        Piece promotion = promotion(move);
+        if (promotion != null) {
+            builder.append("pnbrqk".charAt(promotion.ordinal()));
+        }
+        return builder.toString();
+    }
+
+    private static void appendSquare(StringBuilder builder, int square) {
+        builder.append((char) ('a' + square % 8));
+        builder.append((char) ('1' + square / 8));
+    }
+}
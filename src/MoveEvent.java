@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for each call of Board.move(), with its duration.
+ */
+@Name("chess.Move")
+@Label("Move")
+@Category("Chess")
+@Description("A move tried with Board.move()")
+class MoveEvent extends jdk.jfr.Event {
+    @Label("Move")
+    String move; // in long algebraic notation
+
+    @Label("Legal")
+    boolean legal;
+
+    @Label("Position")
+    String position; // FEN after the move, or before it if it was illegal
+}
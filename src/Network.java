@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * An efficiently updatable neural network (NNUE) that evaluates positions instead of Evaluation's hand-written terms.
+ * The input is one feature per (color, piece, square), seen from each side's point of view, so that a position
+ * is described twice: once as White sees it and once flipped as Black sees it. The first layer turns each view into
+ * hidden sums, the accumulators, which NnueAccumulator keeps up to date as Board adds and removes pieces, so a move
+ * only costs a few rows of additions. The output layer clips both accumulators to [0, activationLimit], the side
+ * to move's first, and takes one weighted sum of them.
+ * The network is immutable and can be shared by any number of threads and boards.
+ *
+ * File format, big-endian: a 16-byte header (the magic number, the version, the hidden size and the output bias),
+ * then the first layer's weights as shorts, one row of hiddenSize per feature, then its biases as shorts,
+ * then the output weights as bytes, hiddenSize for the side to move followed by hiddenSize for the other side.
+ * The file is memory-mapped and read once into arrays laid out for the kernels.
+ */
+public final class Network {
+
+    static final int magic = 0x434E4E31; // "CNN1"
+    static final int version = 1;
+    static final int headerSize = 16;
+    static final int features = 2 * 6 * 64; // (own or opponent's, piece, square)
+    static final int maxHiddenSize = 4096;
+
+    static final int activationLimit = 255; // the clipped accumulator's maximum, which stands for 1.0
+    static final int outputScale = 64; // an output weight of this stands for 1.0
+    static final int centipawnScale = 400; // centipawns for a network output of 1.0
+
+    final int hiddenSize;
+    final short[] featureWeights; // features * hiddenSize
+    final short[] featureBiases; // hiddenSize
+    final short[] outputWeights; // 2 * hiddenSize, each within the range of a byte
+    final int outputBias; // in units of activationLimit * outputScale
+
+    private Network(int hiddenSize, short[] featureWeights, short[] featureBiases, short[] outputWeights, int outputBias) {
+        this.hiddenSize = hiddenSize;
+        this.featureWeights = featureWeights;
+        this.featureBiases = featureBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * Read a network file.
+     * @throws IOException if the file cannot be read or is not a network
+     */
+    public static Network load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < headerSize || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a network: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int hiddenSize = buffer.getInt(8);
+            if (buffer.getInt(0) != magic || buffer.getInt(4) != version || hiddenSize <= 0 || hiddenSize > maxHiddenSize
+                    || size != fileSize(hiddenSize)) {
+                throw new IOException("Not a network, or from another version: " + file);
+            }
+            int outputBias = buffer.getInt(12);
+            buffer.position(headerSize);
+            short[] featureWeights = new short[features * hiddenSize];
+            short[] featureBiases = new short[hiddenSize];
+            buffer.asShortBuffer().get(featureWeights).get(featureBiases);
+            buffer.position(headerSize + 2 * (featureWeights.length + featureBiases.length));
+            short[] outputWeights = new short[2 * hiddenSize];
+            for (int i = 0; i < outputWeights.length; i++) {
+                outputWeights[i] = buffer.get();
+            }
+            return new Network(hiddenSize, featureWeights, featureBiases, outputWeights, outputBias);
+        }
+    }
+
+    private static long fileSize(int hiddenSize) {
+        return headerSize + 2L * (features + 1) * hiddenSize + 2L * hiddenSize;
+    }
+
+    void write(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize(hiddenSize));
+        buffer.putInt(magic).putInt(version).putInt(hiddenSize).putInt(outputBias);
+        for (short weight : featureWeights) {
+            buffer.putShort(weight);
+        }
+        for (short bias : featureBiases) {
+            buffer.putShort(bias);
+        }
+        for (short weight : outputWeights) {
+            buffer.put((byte) weight);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Make an untrained network with small random weights, for tests and benchmarks.
+     * @param hiddenSize: the number of hidden sums per side
+     */
+    static Network random(Random random, int hiddenSize) {
+        short[] featureWeights = new short[features * hiddenSize];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) (random.nextInt(81) - 40);
+        }
+        short[] featureBiases = new short[hiddenSize];
+        for (int i = 0; i < hiddenSize; i++) {
+            featureBiases[i] = (short) random.nextInt(activationLimit / 2);
+        }
+        short[] outputWeights = new short[2 * hiddenSize];
+        for (int i = 0; i < outputWeights.length; i++) {
+            outputWeights[i] = (short) (random.nextInt(255) - 127);
+        }
+        return new Network(hiddenSize, featureWeights, featureBiases, outputWeights, random.nextInt(2001) - 1000);
+    }
+
+    /**
+     * @return the index of a piece's feature as a side sees the board: its own pieces first, and for Black
+     * the board turned upside down
+     */
+    static int feature(Color perspective, Color player, Piece piece, int sq) {
+        int side = player == perspective ? 0 : 1;
+        return (side * 6 + piece.ordinal()) * 64 + (perspective == Color.White ? sq : sq ^ 56);
+    }
+
+    /**
+     * Evaluate the board's position from the point of view of the player to move. The board must have this network
+     * set (see Board.setNetwork).
+     */
+    public int evaluate(Board board) {
+        return evaluate(board.getAccumulator(), board.getCurrentPlayer());
+    }
+
+    int evaluate(NnueAccumulator accumulator, Color player) {
+        NnueKernels kernels = NnueKernels.instance;
+        long output = (long) kernels.forward(accumulator.sums(player), outputWeights, 0)
+                + kernels.forward(accumulator.sums(player == Color.White ? Color.Black : Color.White), outputWeights, hiddenSize)
+                + outputBias;
+        int score = (int) (output * centipawnScale / (activationLimit * outputScale));
+        return Math.max(-SearchEngine.mateScore / 2, Math.min(SearchEngine.mateScore / 2, score));
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * The first layer of a Network for one board: for each side's view, the hidden biases plus the weights of every
+ * piece on the board. Board calls add() and remove() whenever it puts down or takes away a piece, including
+ * while unmaking moves, so the sums always match the position without ever being recomputed.
+ */
+final class NnueAccumulator {
+
+    private final Network network;
+    private final short[][] sums; // indexed by the perspective's Color.ordinal(), then hidden unit
+
+    /**
+     * @param board: the position to start from
+     */
+    NnueAccumulator(Network network, Board board) {
+        this.network = network;
+        sums = new short[2][network.hiddenSize];
+        refresh(board);
+    }
+
+    private NnueAccumulator(NnueAccumulator other) {
+        network = other.network;
+        sums = new short[][] {other.sums[0].clone(), other.sums[1].clone()};
+    }
+
+    NnueAccumulator copy() {
+        return new NnueAccumulator(this);
+    }
+
+    Network getNetwork() {
+        return network;
+    }
+
+    /**
+     * Recompute the sums from scratch for the board's pieces.
+     */
+    void refresh(Board board) {
+        clear();
+        for (Color player : Color.values()) {
+            for (Piece piece : Piece.values()) {
+                long pieces = board.getBitboard(player, piece);
+                while (pieces != 0) {
+                    add(player, piece, Long.numberOfTrailingZeros(pieces));
+                    pieces &= pieces - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the sums to those of an empty board.
+     */
+    void clear() {
+        System.arraycopy(network.featureBiases, 0, sums[0], 0, network.hiddenSize);
+        System.arraycopy(network.featureBiases, 0, sums[1], 0, network.hiddenSize);
+    }
+
+    void add(Color player, Piece piece, int sq) {
+        int hiddenSize = network.hiddenSize;
+        NnueKernels.instance.add(sums[0], network.featureWeights, Network.feature(Color.White, player, piece, sq) * hiddenSize);
+        NnueKernels.instance.add(sums[1], network.featureWeights, Network.feature(Color.Black, player, piece, sq) * hiddenSize);
+    }
+
+    void remove(Color player, Piece piece, int sq) {
+        int hiddenSize = network.hiddenSize;
+        NnueKernels.instance.subtract(sums[0], network.featureWeights, Network.feature(Color.White, player, piece, sq) * hiddenSize);
+        NnueKernels.instance.subtract(sums[1], network.featureWeights, Network.feature(Color.Black, player, piece, sq) * hiddenSize);
+    }
+
+    /**
+     * @return the sums as a side sees the board; not to be changed
+     */
+    short[] sums(Color perspective) {
+        return sums[perspective.ordinal()];
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * The inner loops of a Network: adding a row of weights to an accumulator, taking it away, and the output layer's
+ * clipped dot product. This class runs them as plain loops. VectorNnueKernels (in the vector source folder)
+ * runs them on the CPU's SIMD units through the incubating Vector API; it is used when it has been compiled
+ * and the JVM runs with --add-modules jdk.incubator.vector, unless the system property chess.nnue.scalar is set.
+ * Both give exactly the same results.
+ */
+class NnueKernels {
+
+    static final NnueKernels instance = load();
+
+    private static NnueKernels load() {
+        if (!Boolean.getBoolean("chess.nnue.scalar")) {
+            try {
+                return (NnueKernels) Class.forName("VectorNnueKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Not compiled, or the Vector API module is missing: use the loops below.
+            }
+        }
+        return new NnueKernels();
+    }
+
+    /**
+     * @return whether the loops run on SIMD units
+     */
+    boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * Add weights[offset + i] to each sums[i].
+     */
+    void add(short[] sums, short[] weights, int offset) {
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] += weights[offset + i];
+        }
+    }
+
+    /**
+     * Take weights[offset + i] away from each sums[i].
+     */
+    void subtract(short[] sums, short[] weights, int offset) {
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] -= weights[offset + i];
+        }
+    }
+
+    /**
+     * @return the sum of each sums[i], clipped to [0, Network.activationLimit], times weights[offset + i]
+     */
+    int forward(short[] sums, short[] weights, int offset) {
+        int total = 0;
+        for (int i = 0; i < sums.length; i++) {
+            total += Math.max(0, Math.min(Network.activationLimit, sums[i])) * weights[offset + i];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * A read-only opening book: for each position, the moves played in it with a weight for how good they proved.
+ * The book file is memory-mapped and searched in place, so opening it costs nothing however big it is,
+ * and all processes using the same file share one copy in the page cache. A book can be read by any number
+ * of threads at once. Books are written by OpeningBookBuilder.
+ *
+ * File format, big-endian: a 16-byte header (the magic number, the version and the number of entries)
+ * followed by 16-byte entries (the position's Zobrist key, the move encoded by Move, and the weight),
+ * sorted by key and, for each key, by weight from highest to lowest.
+ * Keys come from Zobrist's fixed seed, so a book only works with the Zobrist keys it was built with.
+ */
+public class OpeningBook {
+
+    static final int magic = 0x43424B31; // "CBK1"
+    static final int version = 1;
+    static final int headerSize = 16;
+    static final int entrySize = 16;
+
+    private final ByteBuffer entries;
+    private final int count;
+
+    /**
+     * Map a book file.
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public OpeningBook(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < headerSize || size > Integer.MAX_VALUE) {
+                throw new IOException("Not an opening book: " + file);
+            }
+            // The mapping stays valid after the channel is closed.
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != magic || buffer.getInt(4) != version
+                    || buffer.getLong(8) != (size - headerSize) / entrySize || (size - headerSize) % entrySize != 0) {
+                throw new IOException("Not an opening book, or from another version: " + file);
+            }
+            count = (int) buffer.getLong(8);
+            entries = buffer;
+        }
+    }
+
+    /**
+     * @return the number of (position, move) entries in the book
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Find the book moves for the board's position that are legal there, best first, without allocating.
+     * @param board: the position
+     * @param moves: filled with the moves, encoded by Move; at least Board.maxMoves long, since the position's
+     * legal moves are generated into it first
+     * @param weights: filled with the weight of each move, or null
+     * @return the number of moves found
+     */
+    public int getMoves(Board board, int[] moves, int[] weights) {
+        long key = board.getKey();
+        int first = firstEntry(key);
+        if (first == count || keyAt(first) != key) {
+            return 0;
+        }
+        int legalCount = board.generateMoves(moves, true);
+        int found = 0;
+        for (int i = first; i < count && keyAt(i) == key; i++) {
+            // A different position with the same key could have a move that is not legal here.
+            // The book moves found so far are swapped to the front, and the legal moves left follow them.
+            int at = indexOf(moves, found, legalCount, moveAt(i));
+            if (at >= 0) {
+                moves[at] = moves[found];
+                moves[found] = moveAt(i);
+                if (weights != null) {
+                    weights[found] = weightAt(i);
+                }
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param moves: scratch space for getMoves(), reused by the caller
+     * @return the book move with the highest weight, or Move.none if the position is not in the book
+     */
+    public int bestMove(Board board, int[] moves) {
+        return getMoves(board, moves, null) > 0 ? moves[0] : Move.none;
+    }
+
+    /**
+     * Choose a book move at random, each with a chance in proportion to its weight, so that play varies.
+     * @param moves: scratch space for getMoves(), reused by the caller
+     * @param weights: scratch space for getMoves(), reused by the caller
+     * @return the move, or Move.none if the position is not in the book or all its moves have weight 0
+     */
+    public int pickMove(Board board, Random random, int[] moves, int[] weights) {
+        int found = getMoves(board, moves, weights);
+        long total = 0;
+        for (int i = 0; i < found; i++) {
+            total += weights[i];
+        }
+        if (total == 0) {
+            return Move.none;
+        }
+        long choice = (long) (random.nextDouble() * total);
+        for (int i = 0; i < found; i++) {
+            choice -= weights[i];
+            if (choice < 0) {
+                return moves[i];
+            }
+        }
+        return moves[found - 1];
+    }
+
+    /**
+     * @return whether the move is in the book for the board's position
+     */
+    public boolean contains(Board board, int move) {
+        long key = board.getKey();
+        for (int i = firstEntry(key); i < count && keyAt(i) == key; i++) {
+            if (moveAt(i) == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Binary search for the first entry whose key is not less than the given key.
+     */
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keyAt(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long keyAt(int index) {
+        return entries.getLong(headerSize + index * entrySize);
+    }
+
+    private int moveAt(int index) {
+        return entries.getInt(headerSize + index * entrySize + 8);
+    }
+
+    private int weightAt(int index) {
+        return entries.getInt(headerSize + index * entrySize + 12);
+    }
+
+    private static int indexOf(int[] moves, int from, int to, int move) {
+        for (int i = from; i < to; i++) {
+            if (moves[i] == move) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
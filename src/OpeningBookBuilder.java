@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the moves played in the first plies of games and writes them as an OpeningBook file.
+ * Each time a move is played in a position its weight goes up: by 2 if the player making it went on to win,
+ * 1 for a draw or an unknown result, and 0 for a loss, so that moves that keep scoring rise to the top.
+ * Games can be added from several threads at once, e.g. straight from PgnReader: each thread adds to weights
+ * of its own, without locking, and they are merged when the book is counted or written, which must not happen
+ * while games are being added.
+ */
+public class OpeningBookBuilder implements PgnListener {
+
+    private final int maxPly;
+    private final Map<Long, Map<Integer, Integer>> weights = new HashMap<Long, Map<Integer, Integer>>(); // key, then move
+    // The weights added by each thread since they were last merged into weights.
+    private final List<Map<Long, Map<Integer, Integer>>> threadWeights = new ArrayList<Map<Long, Map<Integer, Integer>>>();
+    private final ThreadLocal<Map<Long, Map<Integer, Integer>>> ownWeights = new ThreadLocal<Map<Long, Map<Integer, Integer>>>() {
+        @Override
+        protected Map<Long, Map<Integer, Integer>> initialValue() {
+            Map<Long, Map<Integer, Integer>> own = new HashMap<Long, Map<Integer, Integer>>();
+            synchronized (threadWeights) {
+                threadWeights.add(own);
+            }
+            return own;
+        }
+    };
+    private final Board board = new Board();
+    private final int[] legalMoves = new int[Board.maxMoves];
+
+    /**
+     * @param maxPly: how many plies of each game to add to the book
+     */
+    public OpeningBookBuilder(int maxPly) {
+        this.maxPly = maxPly;
+    }
+
+    /**
+     * Add a line of moves from the start position, each with the same weight.
+     * @param weight: added to the weight of each move
+     * @param moves: the moves in long algebraic notation, e.g. "e2e4"
+     * @throws IllegalArgumentException if a move is not legal
+     */
+    public synchronized void addLine(int weight, String... moves) {
+        board.reset();
+        for (int ply = 0; ply < moves.length && ply < maxPly; ply++) {
+            int move = board.findMove(moves[ply], legalMoves);
+            if (move == Move.none) {
+                throw new IllegalArgumentException("Illegal move " + moves[ply] + " at ply " + (ply + 1));
+            }
+            add(ownWeights.get(), board.getKey(), move, weight);
+            board.makeMove(move);
+        }
+    }
+
+    /**
+     * Add a game, weighting its moves by its result.
+     */
+    public void gameRead(Snapshot start, int[] moves, int count, GameState result) {
+        Map<Long, Map<Integer, Integer>> own = ownWeights.get();
+        Board game = start.toBoard();
+        for (int ply = 0; ply < count && ply < maxPly; ply++) {
+            Color player = game.getCurrentPlayer();
+            int weight;
+            if (result == GameState.WhiteWin || result == GameState.BlackWin) {
+                weight = (result == GameState.WhiteWin) == (player == Color.White) ? 2 : 0;
+            } else {
+                weight = 1;
+            }
+            add(own, game.getKey(), moves[ply], weight);
+            game.makeMove(moves[ply]);
+        }
+    }
+
+    /**
+     * Add every valid game of a PGN file, reading it with PgnReader.
+     * @return the report on reading the file
+     */
+    public PgnReport addPgn(Path file, int threads) throws IOException {
+        return PgnReader.read(file, threads, PgnReader.defaultChunkSize, this);
+    }
+
+    /**
+     * @return the number of (position, move) entries collected so far
+     */
+    public synchronized int size() {
+        merge();
+        int size = 0;
+        for (Map<Integer, Integer> moves : weights.values()) {
+            size += moves.size();
+        }
+        return size;
+    }
+
+    /**
+     * Write the book, sorted so that OpeningBook can binary search it.
+     */
+    public synchronized void write(Path file) throws IOException {
+        merge();
+        List<long[]> entries = new ArrayList<long[]>(); // {key, move, weight}
+        for (Map.Entry<Long, Map<Integer, Integer>> position : weights.entrySet()) {
+            for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                entries.add(new long[] {position.getKey(), move.getKey(), move.getValue()});
+            }
+        }
+        Collections.sort(entries, new Comparator<long[]>() {
+            public int compare(long[] a, long[] b) {
+                return a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[2], a[2]);
+            }
+        });
+        ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.headerSize + entries.size() * OpeningBook.entrySize);
+        buffer.putInt(OpeningBook.magic).putInt(OpeningBook.version).putLong(entries.size());
+        for (long[] entry : entries) {
+            buffer.putLong(entry[0]).putInt((int) entry[1]).putInt((int) entry[2]);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Move the weights added by each thread into weights.
+     */
+    private void merge() {
+        synchronized (threadWeights) {
+            for (Map<Long, Map<Integer, Integer>> own : threadWeights) {
+                for (Map.Entry<Long, Map<Integer, Integer>> position : own.entrySet()) {
+                    for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                        add(weights, position.getKey(), move.getKey(), move.getValue());
+                    }
+                }
+                own.clear();
+            }
+        }
+    }
+
+    private static void add(Map<Long, Map<Integer, Integer>> weights, long key, int move, int weight) {
+        Map<Integer, Integer> moves = weights.get(key);
+        if (moves == null) {
+            moves = new HashMap<Integer, Integer>(4);
+            weights.put(key, moves);
+        }
+        Integer old = moves.get(move);
+        // Saturate rather than overflow in books built from huge archives.
+        moves.put(move, (int) Math.min(Integer.MAX_VALUE, (old == null ? 0L : old) + weight));
+    }
+
+    /**
+     * Build a book from a PGN file.
+     * Arguments: the PGN file, the book file to write, and the number of plies per game (default 20).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: OpeningBookBuilder games.pgn book.bin [plies]");
+            return;
+        }
+        OpeningBookBuilder builder = new OpeningBookBuilder(args.length > 2 ? Integer.parseInt(args[2]) : 20);
+        System.out.print(builder.addPgn(Paths.get(args[0]), Runtime.getRuntime().availableProcessors()));
+        builder.write(Paths.get(args[1]));
+        System.out.println("Book entries: " + builder.size());
+    }
+}
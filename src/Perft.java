@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Performance test ("perft"): count the leaf nodes of the legal move tree to a fixed depth.
+ * The counts for well known positions are published, so perft checks the move rules,
+ * and the time it takes measures their speed.
+ */
+public class Perft {
+
+    private Perft() {
+    }
+
+    /**
+     * Count the positions reachable in exactly depth moves from the board's position.
+     * The board is left as it was.
+     * @param board: the board to start from
+     * @param depth: the number of moves to look ahead
+     * @return the number of leaf nodes
+     */
+    public static long perft(Board board, int depth) {
+        return perft(board, depth, new int[Math.max(1, depth)][Board.maxMoves]);
+    }
+
+    private static long perft(Board board, int depth, int[][] moves) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] buffer = moves[depth - 1];
+        int count = board.generateMoves(buffer, true);
+        if (depth == 1) {
+            // Each legal move is a leaf, so there is no need to make them.
+            return count;
+        }
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(buffer[i]);
+            nodes += perft(board, depth - 1, moves);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Count leaf nodes separately for each legal move from the board's position ("divide"),
+     * which narrows a wrong total down to the move whose subtree is wrong.
+     * Root moves are counted in parallel, each on its own copy of the board.
+     * @param board: the board to start from; it is not changed
+     * @param depth: the number of moves to look ahead, at least 1
+     * @param pool: the pool to split root moves across
+     * @return the leaf count below each root move, keyed by the move in long algebraic notation
+     */
+    public static Map<String, Long> divide(Board board, int depth, ForkJoinPool pool) {
+        int[] moves = new int[Board.maxMoves];
+        int count = board.generateMoves(moves, true);
+        List<RootTask> tasks = new ArrayList<RootTask>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new RootTask(board, moves[i], depth - 1));
+        }
+        for (RootTask task : tasks) {
+            pool.execute(task);
+        }
+        Map<String, Long> results = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < count; i++) {
+            results.put(Move.toString(moves[i]), tasks.get(i).join());
+        }
+        return results;
+    }
+
+    /**
+     * Count leaf nodes like perft(), splitting the root moves across a pool.
+     */
+    public static long parallelPerft(Board board, int depth, ForkJoinPool pool) {
+        if (depth <= 1) {
+            return perft(board, depth);
+        }
+        long nodes = 0;
+        for (long subtree : divide(board, depth, pool).values()) {
+            nodes += subtree;
+        }
+        return nodes;
+    }
+
+    private static class RootTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final int move;
+        private final int depth;
+
+        RootTask(Board board, int move, int depth) {
+            this.board = new Board(board);
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            board.makeMove(move);
+            return perft(board, depth, new int[Math.max(1, depth)][Board.maxMoves]);
+        }
+    }
+
+    /**
+     * Run perft from the start position and print the divide output and the speed.
+     * Arguments: depth (default 5) and number of threads (default: all processors).
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Board board = new Board();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        Map<String, Long> results = divide(board, depth, pool);
+        long elapsed = System.nanoTime() - start;
+        long nodes = 0;
+        for (Map.Entry<String, Long> result : results.entrySet()) {
+            System.out.println(result.getKey() + ": " + result.getValue());
+            nodes += result.getValue();
+        }
+        System.out.println();
+        System.out.println("Nodes: " + nodes);
+        System.out.println("Time: " + elapsed / 1000000 + " ms");
+        System.out.println("Nodes/sec: " + (long) (nodes / (elapsed / 1e9)));
+        pool.shutdown();
+    }
+}
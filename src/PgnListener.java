@@ -0,0 +1,14 @@
+/**
+ * Receives the games read from a PGN file by PgnReader. Several reader threads call it at once,
+ * so implementations must be thread-safe.
+ */
+public interface PgnListener {
+    /**
+     * Called for each game whose moves are all legal.
+     * @param start: the position the game starts from
+     * @param moves: the moves of the game, encoded by Move; the array is reused once the call returns
+     * @param count: the number of moves, at the start of the array
+     * @param result: the result given in the game, or GameState.Ongoing if it is unfinished or unknown
+     */
+    public void gameRead(Snapshot start, int[] moves, int count, GameState result);
+}
@@ -0,0 +1,479 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays the games of a PGN file to check that every move in them is legal.
+ * The file is cut into chunks at game boundaries (a line starting with "[Event ", or a tag after a blank line),
+ * and each chunk is memory-mapped and read by its own task. Only a few chunks per thread are read or waiting
+ * at a time, so files of any size are read with a bounded amount of memory and all cores at once. Moves are decoded from Standard Algebraic Notation straight from the mapped bytes,
+ * without building strings, and played with makeMove(), so the front end is never asked about promotions.
+ * Comments, variations and annotation glyphs are skipped. Games with a FEN tag start from that position.
+ */
+public class PgnReader {
+
+    public static final long defaultChunkSize = 16 << 20;
+
+    private static final long maxChunkSize = 1 << 30; // a mapping is limited to 2 GB
+    private static final int chunksPerThread = 2; // chunks read or waiting to be added to the report, per thread
+
+    private static final byte[] gameStart = "\n[Event ".getBytes(StandardCharsets.US_ASCII);
+    private static final int scanWindow = 1 << 20; // bytes mapped at a time while looking for a game boundary
+    private static final String pieceLetters = "PNBRQK"; // indexed by Piece.ordinal()
+    private static final Piece[] pieceTypes = Piece.values();
+
+    private PgnReader() {
+    }
+
+    /**
+     * Validate every game in a PGN file, using one chunk of the file per task.
+     * @param file: the PGN file
+     * @param threads: the number of chunks to read at once
+     * @param chunkSize: the approximate size of each chunk in bytes; a chunk holds whole games unless it would
+     * grow past 1 GB without reaching a game boundary
+     * @return the counts of games, moves and results, and the first few illegal moves
+     */
+    public static PgnReport validate(Path file, int threads, long chunkSize) throws IOException {
+        return read(file, threads, chunkSize, null);
+    }
+
+    public static PgnReport validate(Path file, int threads) throws IOException {
+        return read(file, threads, defaultChunkSize, null);
+    }
+
+    /**
+     * Validate every game in a PGN file like validate(), and pass each valid game to a listener.
+     * @param listener: told about each valid game, from several threads at once, or null
+     */
+    public static PgnReport read(Path file, int threads, long chunkSize, PgnListener listener) throws IOException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        PgnReport report = new PgnReport();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Results are added in the order of the chunks, so that the errors are listed in the order of the file.
+            Deque<Future<PgnReport>> results = new ArrayDeque<Future<PgnReport>>();
+            int maxPending = Math.max(1, threads) * chunksPerThread;
+            long size = channel.size();
+            long chunkStart = 0;
+            while (chunkStart < size) {
+                long chunkLimit = Math.min(size, chunkStart + maxChunkSize);
+                long chunkEnd = nextGame(channel, Math.min(chunkLimit, chunkStart + Math.max(1, chunkSize)), chunkLimit);
+                if (results.size() == maxPending) {
+                    report.add(results.removeFirst().get());
+                }
+                results.addLast(pool.submit(new ChunkReader(channel, chunkStart, chunkEnd, listener)));
+                chunkStart = chunkEnd;
+            }
+            while (!results.isEmpty()) {
+                report.add(results.removeFirst().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        report.timeMillis = (System.nanoTime() - start) / 1000000;
+        return report;
+    }
+
+    /**
+     * Find the start of the first game that begins at or after a position in the file: a line starting with
+     * "[Event ", or for files without Event tags, a line starting with '[' after a blank line.
+     * @param limit: where to stop looking
+     * @return the offset of the '[' of the game's first tag, or limit if no game starts before it
+     */
+    private static long nextGame(FileChannel channel, long position, long limit) throws IOException {
+        // Start a few bytes early, so that a game starting exactly at position is found by its preceding newlines.
+        long windowStart = Math.max(0, position - 3);
+        while (windowStart < limit) {
+            int length = (int) Math.min(scanWindow, limit - windowStart);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+            for (int i = 0; i < length; i++) {
+                if (window.get(i) != '\n') {
+                    continue;
+                }
+                if (windowStart + i + 1 >= position && i + gameStart.length <= length && matches(window, i, gameStart)) {
+                    return windowStart + i + 1;
+                }
+                int next = i + 1;
+                if (next < length && window.get(next) == '\r') {
+                    next++;
+                }
+                if (next + 1 < length && window.get(next) == '\n' && window.get(next + 1) == '['
+                        && windowStart + next + 1 >= position) {
+                    return windowStart + next + 1;
+                }
+            }
+            if (windowStart + length == limit) {
+                break;
+            }
+            // Overlap the windows so that a boundary straddling two of them is not missed.
+            windowStart += length - gameStart.length - 1;
+        }
+        return limit;
+    }
+
+    private static boolean matches(MappedByteBuffer buffer, int position, byte[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (buffer.get(position + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads and replays the games in one chunk of the file, with its own board.
+     */
+    private static class ChunkReader implements Callable<PgnReport> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final PgnListener listener;
+        // Created when the chunk is read rather than when it is queued.
+        private Board board;
+        private int[] moves;
+        private PgnReport report;
+        private int[] gameMoves; // the moves of the current game, for the listener
+        private MappedByteBuffer buffer;
+        private int pos;
+        private int limit;
+
+        ChunkReader(FileChannel channel, long start, long end, PgnListener listener) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.listener = listener;
+        }
+
+        @Override
+        public PgnReport call() throws IOException {
+            board = new Board();
+            moves = new int[Board.maxMoves];
+            report = new PgnReport();
+            gameMoves = new int[Board.maxMoves];
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            limit = buffer.capacity();
+            pos = 0;
+            skipWhitespace();
+            while (pos < limit) {
+                readGame();
+                skipWhitespace();
+            }
+            return report;
+        }
+
+        /**
+         * Read one game: its tag pairs, then its moves up to the result.
+         */
+        private void readGame() {
+            long gameOffset = start + pos;
+            String fen = null;
+            while (pos < limit && buffer.get(pos) == '[') {
+                if (tagNameIs("FEN")) {
+                    fen = tagValue();
+                }
+                skipTag();
+                skipWhitespace();
+            }
+            String error = null;
+            if (fen == null) {
+                board.reset();
+            } else {
+                try {
+                    board.setFen(fen);
+                } catch (IllegalArgumentException e) {
+                    error = "Game at byte " + gameOffset + ": " + e.getMessage();
+                }
+            }
+            Snapshot startPosition = listener != null && error == null ? board.snapshot() : null;
+            GameState result = GameState.Ongoing;
+            int ply = 0;
+            while (true) {
+                skipWhitespace();
+                if (pos >= limit) {
+                    report.unfinished++;
+                    break;
+                }
+                byte c = buffer.get(pos);
+                if (c == '[') {
+                    // The next game's tags, without a result ending this one.
+                    report.unfinished++;
+                    break;
+                } else if (c == '{') {
+                    skipPast((byte) '}');
+                    continue;
+                } else if (c == ';' || (c == '%' && (pos == 0 || buffer.get(pos - 1) == '\n'))) {
+                    skipPast((byte) '\n');
+                    continue;
+                } else if (c == '(') {
+                    skipVariation();
+                    continue;
+                }
+                int tokenEnd = tokenEnd();
+                if (tokenIs("1-0", tokenEnd)) {
+                    report.whiteWins++;
+                    result = GameState.WhiteWin;
+                } else if (tokenIs("0-1", tokenEnd)) {
+                    report.blackWins++;
+                    result = GameState.BlackWin;
+                } else if (tokenIs("1/2-1/2", tokenEnd)) {
+                    report.draws++;
+                    result = GameState.Draw;
+                } else if (tokenIs("*", tokenEnd)) {
+                    report.unfinished++;
+                } else {
+                    if (c >= '1' && c <= '9') {
+                        // A move number, possibly written without a space before the move, e.g. "12.Nf3".
+                        while (pos < tokenEnd && ((buffer.get(pos) >= '0' && buffer.get(pos) <= '9') || buffer.get(pos) == '.')) {
+                            pos++;
+                        }
+                        continue;
+                    } else if (c != '$' && error == null) {
+                        int move = decode(pos, tokenEnd);
+                        if (move == Move.none) {
+                            error = "Game at byte " + gameOffset + ", ply " + (ply + 1) + ": cannot play "
+                                    + new String(tokenBytes(pos, tokenEnd), StandardCharsets.US_ASCII);
+                        } else {
+                            board.makeMove(move);
+                            if (ply == gameMoves.length) {
+                                gameMoves = Arrays.copyOf(gameMoves, ply * 2);
+                            }
+                            gameMoves[ply++] = move;
+                        }
+                    }
+                    pos = tokenEnd;
+                    continue;
+                }
+                pos = tokenEnd;
+                break;
+            }
+            report.games++;
+            report.moves += ply;
+            if (error == null) {
+                report.validGames++;
+                if (listener != null) {
+                    listener.gameRead(startPosition, gameMoves, ply, result);
+                }
+            } else {
+                report.addError(error);
+            }
+        }
+
+        /**
+         * Find the one legal move that a SAN token such as "Nbxd7+", "exd8=Q" or "O-O-O" describes.
+         * @return the move, or Move.none if the token is malformed or describes no legal move or several
+         */
+        private int decode(int from, int to) {
+            // Check and annotation marks carry no information about the move.
+            while (to > from && "+#!?".indexOf(buffer.get(to - 1)) >= 0) {
+                to--;
+            }
+            int count = board.generateMoves(moves, true);
+            int king = board.getKingSquare(board.getCurrentPlayer());
+            byte first = buffer.get(from);
+            if (first == 'O' || first == '0') {
+                // "O-O" or "O-O-O", also written with zeros.
+                int target = to - from == 3 ? king + 2 : to - from == 5 ? king - 2 : -1;
+                for (int i = 0; i < count; i++) {
+                    if (Move.from(moves[i]) == king && Move.to(moves[i]) == target) {
+                        return moves[i];
+                    }
+                }
+                return Move.none;
+            }
+            Piece piece = Piece.Pawn;
+            int letter = pieceLetters.indexOf(first);
+            if (letter > 0) {
+                piece = pieceTypes[letter];
+                from++;
+            }
+            Piece promotion = null;
+            if (to - from >= 3 && pieceLetters.indexOf(buffer.get(to - 1)) > 0 && piece == Piece.Pawn) {
+                // "e8=Q", or "e8Q" without the equals sign.
+                promotion = pieceTypes[pieceLetters.indexOf(buffer.get(to - 1))];
+                to -= buffer.get(to - 2) == '=' ? 2 : 1;
+            }
+            if (to - from < 2) {
+                return Move.none;
+            }
+            int file = buffer.get(to - 2) - 'a';
+            int rank = buffer.get(to - 1) - '1';
+            if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+                return Move.none;
+            }
+            int target = rank * 8 + file;
+            // Whatever comes between the piece and the destination: a file and/or rank to tell pieces apart, and 'x'.
+            int fromFile = -1;
+            int fromRank = -1;
+            for (int i = from; i < to - 2; i++) {
+                byte c = buffer.get(i);
+                if (c >= 'a' && c <= 'h') {
+                    fromFile = c - 'a';
+                } else if (c >= '1' && c <= '8') {
+                    fromRank = c - '1';
+                } else if (c != 'x' && c != ':') {
+                    return Move.none;
+                }
+            }
+            int found = Move.none;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                int origin = Move.from(move);
+                if (Move.to(move) == target && board.pieceAt(origin) == piece && Move.promotion(move) == promotion
+                        && (fromFile < 0 || origin % 8 == fromFile) && (fromRank < 0 || origin / 8 == fromRank)) {
+                    if (found != Move.none) {
+                        return Move.none; // ambiguous
+                    }
+                    found = move;
+                }
+            }
+            return found;
+        }
+
+        private void skipWhitespace() {
+            while (pos < limit && buffer.get(pos) <= ' ') {
+                pos++;
+            }
+        }
+
+        /**
+         * The end of the token at pos: the next whitespace or character that starts something else.
+         */
+        private int tokenEnd() {
+            int end = pos + 1;
+            while (end < limit) {
+                byte c = buffer.get(end);
+                if (c <= ' ' || c == '{' || c == '(' || c == ')' || c == ';' || c == '[' || c == '$') {
+                    break;
+                }
+                end++;
+            }
+            return end;
+        }
+
+        private boolean tokenIs(String token, int tokenEnd) {
+            if (tokenEnd - pos != token.length()) {
+                return false;
+            }
+            for (int i = 0; i < token.length(); i++) {
+                if (buffer.get(pos + i) != token.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private byte[] tokenBytes(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(from + i);
+            }
+            return bytes;
+        }
+
+        /**
+         * Whether the tag pair at pos (on its '[') has the given name.
+         */
+        private boolean tagNameIs(String name) {
+            int end = pos + 1 + name.length();
+            if (end >= limit || buffer.get(end) > ' ') {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (buffer.get(pos + 1 + i) != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The value of the tag pair at pos, without its quotes and escapes.
+         */
+        private String tagValue() {
+            StringBuilder value = new StringBuilder();
+            int i = pos;
+            while (i < limit && buffer.get(i) != '"' && buffer.get(i) != '\n') {
+                i++;
+            }
+            for (i++; i < limit && buffer.get(i) != '"' && buffer.get(i) != '\n'; i++) {
+                if (buffer.get(i) == '\\') {
+                    i++;
+                }
+                value.append((char) buffer.get(i));
+            }
+            return value.toString();
+        }
+
+        /**
+         * Skip a tag pair such as [White "Doe, John"]. The value may contain ']' and escaped quotes.
+         */
+        private void skipTag() {
+            boolean quoted = false;
+            while (pos < limit) {
+                byte c = buffer.get(pos++);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == '\\' && quoted) {
+                    pos++;
+                } else if ((c == ']' && !quoted) || c == '\n') {
+                    return;
+                }
+            }
+        }
+
+        private void skipPast(byte terminator) {
+            while (pos < limit && buffer.get(pos++) != terminator) {
+            }
+        }
+
+        /**
+         * Skip a variation, including any variations and comments nested in it.
+         */
+        private void skipVariation() {
+            int depth = 0;
+            while (pos < limit) {
+                byte c = buffer.get(pos++);
+                if (c == '{') {
+                    skipPast((byte) '}');
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Validate a PGN file and print the summary.
+     * Arguments: the file, and the number of threads (default: all processors).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: PgnReader file.pgn [threads]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        System.out.print(validate(Paths.get(args[0]), threads));
+    }
+}
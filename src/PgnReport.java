@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The summary of validating a PGN file: how many games were read, how they ended,
+ * and which games contained a move that could not be played.
+ */
+public class PgnReport {
+    public static final int maxErrors = 100; // errors beyond this many are counted but not described
+
+    public long games;
+    public long validGames; // games whose every move was legal
+    public long moves; // moves played in all games, up to the first bad move of each
+    public long whiteWins, blackWins, draws, unfinished; // by the result given in the game
+    public long timeMillis;
+    public final List<String> errors = new ArrayList<String>(); // one per invalid game, for the first maxErrors of them
+
+    public long invalidGames() {
+        return games - validGames;
+    }
+
+    public long gamesPerSecond() {
+        return timeMillis == 0 ? games * 1000 : games * 1000 / timeMillis;
+    }
+
+    void addError(String error) {
+        if (errors.size() < maxErrors) {
+            errors.add(error);
+        }
+    }
+
+    /**
+     * Add the counts and errors of another part of the same file to this report.
+     */
+    void add(PgnReport other) {
+        games += other.games;
+        validGames += other.validGames;
+        moves += other.moves;
+        whiteWins += other.whiteWins;
+        blackWins += other.blackWins;
+        draws += other.draws;
+        unfinished += other.unfinished;
+        for (String error : other.errors) {
+            addError(error);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Games: ").append(games).append(" (").append(validGames).append(" valid, ")
+                .append(invalidGames()).append(" invalid)\n");
+        builder.append("Moves: ").append(moves).append('\n');
+        builder.append("Results: ").append(whiteWins).append(" 1-0, ").append(blackWins).append(" 0-1, ")
+                .append(draws).append(" 1/2-1/2, ").append(unfinished).append(" *\n");
+        builder.append("Time: ").append(timeMillis).append(" ms, ").append(gamesPerSecond()).append(" games/sec\n");
+        for (String error : errors) {
+            builder.append(error).append('\n');
+        }
+        if (invalidGames() > errors.size()) {
+            builder.append("... and ").append(invalidGames() - errors.size()).append(" more invalid games\n");
+        }
+        return builder.toString();
+    }
+}
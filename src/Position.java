@@ -1,28 +1,64 @@
-public class Position {
-    public int x, y;
+/**
+ * A square of the board as coordinates: x is the file (0 for a) and y the rank (0 for the first rank).
+ * There is exactly one immutable Position per square, got with of(), so positions are safe to share
+ * and to use as map keys. Board itself works with square indices (y * 8 + x); see square().
+ */
+public final class Position {
     public static final int boardSize = 8;
-    public Position(int x, int y) {
-        set(x, y);
+
+    private static final Position[] positions = new Position[boardSize * boardSize];
+
+    static {
+        for (int square = 0; square < positions.length; square++) {
+            positions[square] = new Position(square % boardSize, square / boardSize);
+        }
     }
 
-    public void set(int x, int y) {
-        assert x >= 0 && x < boardSize;
-        assert y >= 0 && y < boardSize;
+    public final int x, y;
+
+    private Position(int x, int y) {
         this.x = x;
         this.y = y;
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (o instanceof Position) {
-            Position opos = (Position) o;
-            return this.x == opos.x && this.y == opos.y;
+    /**
+     * @throws IllegalArgumentException if the coordinates are off the board
+     */
+    public static Position of(int x, int y) {
+        if (x < 0 || x >= boardSize || y < 0 || y >= boardSize) {
+            throw new IllegalArgumentException("Off the board: (" + x + ", " + y + ")");
+        }
+        return positions[y * boardSize + x];
+    }
+
+    /**
+     * @param square: the square index, y * 8 + x
+     * @throws IllegalArgumentException if the index is off the board
+     */
+    public static Position of(int square) {
+        if (square < 0 || square >= positions.length) {
+            throw new IllegalArgumentException("Off the board: " + square);
         }
-        return false;
+        return positions[square];
+    }
+
+    /**
+     * @return the square index, y * 8 + x
+     */
+    public int square() {
+        return y * boardSize + x;
     }
 
     @Override
     public int hashCode() {
-        return y * boardSize + x;
+        return square();
+    }
+
+    /**
+     * @return the square in algebraic notation, e.g. "e4"
+     */
+    @Override
+    public String toString() {
+        return "" + (char) ('a' + x) + (char) ('1' + y);
     }
 }
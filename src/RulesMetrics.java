@@ -0,0 +1,225 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timings of Board's rules engine, for monitoring a running process without a profiler.
+ * Collection is off by default and costs a read of one flag per public Board call while off: Board counts
+ * its rule checks in plain fields of its own and reports them at the end of each call. It is turned on by
+ * setEnabled(), by the JMX attribute "Enabled" or by starting Java with -Dchess.metrics=true, which also
+ * registers the MBean. Counters may be updated by any number of boards on any threads at once.
+ *
+ * Counted: moves tried through Board.move() and their latency (a histogram with a bucket per power of two
+ * nanoseconds, and the slowest move with its position), and the calls of the rule checks behind them
+ * (move range, attacked squares and the legality of a move, whatever asked for them).
+ * Moves, game ends and search iterations are also recorded as Flight Recorder events (MoveEvent,
+ * GameEndEvent and SearchIterationEvent) whenever a recording is running, independently of these counters.
+ */
+public final class RulesMetrics implements RulesMetricsMBean {
+
+    public static final String objectName = "chess:type=RulesMetrics";
+
+    static volatile boolean enabled = Boolean.getBoolean("chess.metrics");
+    private static final LongAdder moveRangeChecks = new LongAdder();
+    private static final LongAdder attackChecks = new LongAdder();
+    private static final LongAdder legalityChecks = new LongAdder();
+    private static final LongAdder moves = new LongAdder();
+    private static final LongAdder illegalMoves = new LongAdder();
+    private static final LongAdder gamesEnded = new LongAdder();
+    private static final AtomicLongArray latencies = new AtomicLongArray(64); // bucket b counts moves under 2^(b+1) ns
+    private static volatile long slowestNanos;
+    private static volatile String slowestMove = "";
+    private static volatile long resetTime = System.nanoTime();
+    private static final RulesMetrics instance = new RulesMetrics();
+
+    static {
+        if (enabled) {
+            register();
+        }
+    }
+
+    private RulesMetrics() {
+    }
+
+    /**
+     * Register the MBean with the platform MBean server, under objectName, unless it already is.
+     */
+    public static synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(instance, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + objectName, e);
+        }
+    }
+
+    /**
+     * @return the metrics, e.g. to read them in-process without JMX
+     */
+    public static RulesMetrics get() {
+        return instance;
+    }
+
+    /**
+     * Count a call of Board.move().
+     * @param nanos: how long it took
+     * @param legal: whether the move was made
+     * @return whether it was the slowest move so far, to be described with recordSlowestMove()
+     */
+    static boolean recordMove(long nanos, boolean legal) {
+        (legal ? moves : illegalMoves).increment();
+        latencies.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+        return nanos > slowestNanos;
+    }
+
+    /**
+     * @param nanos: how long the move took
+     * @param move: the move and its position
+     */
+    static void recordSlowestMove(long nanos, String move) {
+        synchronized (instance) {
+            if (nanos > slowestNanos) {
+                slowestNanos = nanos;
+                slowestMove = move + " (" + nanos + " ns)";
+            }
+        }
+    }
+
+    /**
+     * Count rule checks made by a board.
+     */
+    static void addChecks(int moveRange, int attack, int legality) {
+        if (moveRange != 0) {
+            moveRangeChecks.add(moveRange);
+        }
+        if (attack != 0) {
+            attackChecks.add(attack);
+        }
+        if (legality != 0) {
+            legalityChecks.add(legality);
+        }
+    }
+
+    static void recordGameEnd() {
+        gamesEnded.increment();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        RulesMetrics.enabled = enabled;
+    }
+
+    @Override
+    public synchronized void reset() {
+        moveRangeChecks.reset();
+        attackChecks.reset();
+        legalityChecks.reset();
+        moves.reset();
+        illegalMoves.reset();
+        gamesEnded.reset();
+        for (int i = 0; i < latencies.length(); i++) {
+            latencies.set(i, 0);
+        }
+        slowestNanos = 0;
+        slowestMove = "";
+        resetTime = System.nanoTime();
+    }
+
+    @Override
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    @Override
+    public long getIllegalMoves() {
+        return illegalMoves.sum();
+    }
+
+    @Override
+    public long getGamesEnded() {
+        return gamesEnded.sum();
+    }
+
+    @Override
+    public double getMovesPerSecond() {
+        long nanos = System.nanoTime() - resetTime;
+        return nanos <= 0 ? 0 : moves.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public long getMoveRangeChecks() {
+        return moveRangeChecks.sum();
+    }
+
+    @Override
+    public long getAttackChecks() {
+        return attackChecks.sum();
+    }
+
+    @Override
+    public long getLegalityChecks() {
+        return legalityChecks.sum();
+    }
+
+    @Override
+    public long getMoveLatencyP50Nanos() {
+        return latencyPercentile(0.5);
+    }
+
+    @Override
+    public long getMoveLatencyP99Nanos() {
+        return latencyPercentile(0.99);
+    }
+
+    @Override
+    public long getMoveLatencyMaxNanos() {
+        return slowestNanos;
+    }
+
+    /**
+     * @return the number of moves in each latency bucket: entry b counts moves that took from 2^b to 2^(b+1) - 1 ns
+     */
+    @Override
+    public long[] getMoveLatencyHistogram() {
+        long[] histogram = new long[latencies.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latencies.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public String getSlowestMove() {
+        return slowestMove;
+    }
+
+    /**
+     * @return the upper end of the histogram bucket holding the given fraction of moves, or 0 if none were counted
+     */
+    private long latencyPercentile(double fraction) {
+        long[] histogram = getMoveLatencyHistogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        for (int i = 0; i < histogram.length && total > 0; i++) {
+            rank -= histogram[i];
+            if (rank <= 0) {
+                return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * The management interface of RulesMetrics, as seen by JMX clients such as JConsole or a monitoring agent.
+ */
+public interface RulesMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Set every counter back to zero and restart the clock for getMovesPerSecond().
+     */
+    void reset();
+
+    long getMoves();
+
+    long getIllegalMoves();
+
+    long getGamesEnded();
+
+    double getMovesPerSecond();
+
+    long getMoveRangeChecks();
+
+    long getAttackChecks();
+
+    long getLegalityChecks();
+
+    long getMoveLatencyP50Nanos();
+
+    long getMoveLatencyP99Nanos();
+
+    long getMoveLatencyMaxNanos();
+
+    long[] getMoveLatencyHistogram();
+
+    String getSlowestMove();
+}
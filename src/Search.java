@@ -0,0 +1,352 @@
+import java.util.Arrays;
+
+/**
+ * One search thread: iterative deepening over a negamax alpha-beta search with principal variation
+ * search, a quiescence search of captures at the leaves, and move ordering by transposition table move,
+ * MVV-LVA, killer moves and the history heuristic. Each thread owns its board and tables;
+ * only the transposition table is shared with the other threads of a SearchEngine.
+ */
+class Search {
+
+    static final int maxPly = 128;
+
+    private static final int infinity = SearchEngine.mateScore + 1;
+    private static final int[] pieceValues = {100, 320, 330, 500, 900, 0}; // indexed by Piece.ordinal()
+    private static final int checkInterval = 1024; // nodes between checks of the stop flag and the clock
+
+    // Move ordering scores; history scores are kept below the killer scores.
+    private static final int ttMoveScore = 1 << 30;
+    private static final int captureScore = 1 << 20;
+    private static final int firstKillerScore = 900000;
+    private static final int secondKillerScore = 800000;
+    private static final int historyLimit = 500000;
+
+    private final SearchEngine engine;
+    private final TranspositionTable table;
+    private final Evaluation evaluation = new Evaluation();
+    private Network network; // evaluates instead of evaluation if not null
+    private Board board;
+
+    private final int[][] moves = new int[maxPly][Board.maxMoves];
+    private final int[][] moveScores = new int[maxPly][Board.maxMoves];
+    private final int[][] killers = new int[maxPly][2];
+    private final int[][][] history = new int[2][64][64]; // indexed by Color.ordinal(), from, to
+    private final int[][] pv = new int[maxPly + 1][maxPly + 1]; // triangular principal variation table
+    private final int[] pvLength = new int[maxPly + 1];
+
+    private long nodes;
+    private boolean stopped;
+    private int rootBestMove;
+    private int rootBestScore;
+
+    Search(SearchEngine engine, TranspositionTable table) {
+        this.engine = engine;
+        this.table = table;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Search a position by iterative deepening until the depth limit is reached or the engine stops the search.
+     * @param position: the board to search; the search works on its own copy
+     * @param maxDepth: the deepest iteration to run
+     * @param depthOffset: added to the first depth, so that helper threads search different depths than the main one
+     * @param listener: told about each completed iteration, or null for helper threads
+     * @return the result of the deepest completed iteration
+     */
+    SearchResult run(Board position, int maxDepth, int depthOffset, SearchListener listener) {
+        if (board == null) {
+            board = new Board(position);
+        } else {
+            board.copyFrom(position);
+        }
+        network = engine.getNetwork();
+        board.setNetwork(network);
+        nodes = 0;
+        stopped = false;
+        for (int[] pair : killers) {
+            pair[0] = pair[1] = Move.none;
+        }
+        for (int[][] side : history) {
+            for (int[] row : side) {
+                Arrays.fill(row, 0);
+            }
+        }
+        SearchResult result = new SearchResult(Move.none, 0, 0, 0, 0, new int[0]);
+        for (int depth = 1 + depthOffset; depth <= maxDepth; depth++) {
+            rootBestMove = Move.none;
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+            int score = negamax(depth, 0, -infinity, infinity);
+            if (stopped) {
+                // Keep a move from the unfinished iteration only if it is already known to beat the last one.
+                if (rootBestMove != Move.none && (result.bestMove == Move.none || rootBestScore > result.score)) {
+                    result = new SearchResult(rootBestMove, rootBestScore, result.depth, engine.totalNodes(), engine.elapsedMillis(), new int[] {rootBestMove});
+                }
+                break;
+            }
+            int[] line = new int[pvLength[0]];
+            System.arraycopy(pv[0], 0, line, 0, line.length);
+            result = new SearchResult(line.length > 0 ? line[0] : Move.none, score, depth, engine.totalNodes(), engine.elapsedMillis(), line);
+            if (event.shouldCommit()) {
+                event.depth = depth;
+                event.score = score;
+                event.bestMove = Move.toString(result.bestMove);
+                event.nodes = nodes;
+                event.mainThread = listener != null;
+                event.commit();
+            }
+            if (listener != null) {
+                listener.iterationComplete(result);
+                if (!engine.shouldStartIteration(result)) {
+                    break;
+                }
+            }
+            if (line.length == 0) {
+                break; // no legal moves
+            }
+        }
+        return result;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+        if (depth <= 0 || ply >= maxPly) {
+            return quiesce(ply, alpha, beta);
+        }
+        if (checkStop()) {
+            return 0;
+        }
+        nodes++;
+        // A repetition is scored as a draw at once: if repeating were best, it could be repeated again.
+        if (ply > 0 && (board.getHalfmoveClock() >= 100 || board.repetitions() > 0)) {
+            return 0;
+        }
+        boolean pvNode = beta - alpha > 1;
+        int ttMove = Move.none;
+        long entry = table.probe(board.getKey());
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (ply > 0 && !pvNode && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTableScore(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.exact
+                        || (bound == TranspositionTable.lowerBound && score >= beta)
+                        || (bound == TranspositionTable.upperBound && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+        Color player = board.getCurrentPlayer();
+        boolean inCheck = board.isInCheck();
+        if (inCheck) {
+            depth++; // check extension
+        }
+
+        int[] buffer = moves[ply];
+        int[] scores = moveScores[ply];
+        int count = board.generateMoves(buffer, false);
+        scoreMoves(buffer, scores, count, ttMove, ply);
+        int originalAlpha = alpha;
+        int bestScore = -infinity;
+        int bestMove = Move.none;
+        int legalMoves = 0;
+        for (int i = 0; i < count; i++) {
+            int move = pickMove(buffer, scores, i, count);
+            boolean quiet = !isCapture(move) && Move.promotion(move) == null;
+            board.makeMove(move);
+            if (board.isAttackedBy(board.getCurrentPlayer(), board.getKingSquare(player))) {
+                board.unmakeMove();
+                continue;
+            }
+            legalMoves++;
+            int score;
+            if (legalMoves == 1) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                // Principal variation search: prove the move is worse with a null window, and only search it fully if not.
+                score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            board.unmakeMove();
+            if (stopped) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (ply == 0) {
+                    rootBestMove = move;
+                    rootBestScore = score;
+                }
+            }
+            if (score > alpha) {
+                alpha = score;
+                pv[ply][ply] = move;
+                System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+                pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+            }
+            if (alpha >= beta) {
+                if (quiet) {
+                    rememberCutoff(player, move, depth, ply);
+                }
+                break;
+            }
+        }
+        if (legalMoves == 0) {
+            // Checkmate, preferring the quickest mate, or stalemate.
+            return inCheck ? -SearchEngine.mateScore + ply : 0;
+        }
+        int bound = bestScore >= beta ? TranspositionTable.lowerBound
+                : (alpha > originalAlpha ? TranspositionTable.exact : TranspositionTable.upperBound);
+        table.store(board.getKey(), bestMove, toTableScore(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    /**
+     * Search only captures and queen promotions until the position is quiet, so that the evaluation
+     * is never taken in the middle of an exchange. The player to move may "stand pat" on the evaluation.
+     */
+    private int quiesce(int ply, int alpha, int beta) {
+        if (checkStop()) {
+            return 0;
+        }
+        nodes++;
+        int standPat = network != null ? network.evaluate(board) : evaluation.evaluate(board);
+        if (standPat >= beta || ply >= maxPly) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+        Color player = board.getCurrentPlayer();
+        int[] buffer = moves[ply];
+        int[] scores = moveScores[ply];
+        int count = board.generateMoves(buffer, false);
+        int captures = 0;
+        for (int i = 0; i < count; i++) {
+            Piece promotion = Move.promotion(buffer[i]);
+            if (promotion == Piece.Queen || (promotion == null && isCapture(buffer[i]))) {
+                buffer[captures++] = buffer[i];
+            }
+        }
+        scoreMoves(buffer, scores, captures, Move.none, ply);
+        for (int i = 0; i < captures; i++) {
+            int move = pickMove(buffer, scores, i, captures);
+            board.makeMove(move);
+            if (board.isAttackedBy(board.getCurrentPlayer(), board.getKingSquare(player))) {
+                board.unmakeMove();
+                continue;
+            }
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            board.unmakeMove();
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+        }
+        return alpha;
+    }
+
+    private boolean checkStop() {
+        if (!stopped && (nodes & (checkInterval - 1)) == 0 && engine.shouldStop()) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    private boolean isCapture(int move) {
+        int to = Move.to(move);
+        return board.pieceAt(to) != null || (to == board.getEnPassantSquare() && board.pieceAt(Move.from(move)) == Piece.Pawn);
+    }
+
+    private void scoreMoves(int[] buffer, int[] scores, int count, int ttMove, int ply) {
+        int side = board.getCurrentPlayer().ordinal();
+        for (int i = 0; i < count; i++) {
+            int move = buffer[i];
+            if (move == ttMove) {
+                scores[i] = ttMoveScore;
+            } else if (isCapture(move) || Move.promotion(move) != null) {
+                // Most valuable victim, least valuable attacker.
+                Piece victim = board.pieceAt(Move.to(move));
+                int victimValue = victim == null ? pieceValues[Piece.Pawn.ordinal()] : pieceValues[victim.ordinal()];
+                Piece promotion = Move.promotion(move);
+                if (promotion != null) {
+                    victimValue += pieceValues[promotion.ordinal()];
+                }
+                scores[i] = captureScore + victimValue * 16 - board.pieceAt(Move.from(move)).ordinal();
+            } else if (move == killers[ply][0]) {
+                scores[i] = firstKillerScore;
+            } else if (move == killers[ply][1]) {
+                scores[i] = secondKillerScore;
+            } else {
+                scores[i] = history[side][Move.from(move)][Move.to(move)];
+            }
+        }
+    }
+
+    /**
+     * Move the best scored of the remaining moves to position index and return it (selection sort, one step at a time,
+     * since a cutoff usually comes before the list is exhausted).
+     */
+    private int pickMove(int[] buffer, int[] scores, int index, int count) {
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = buffer[best];
+        buffer[best] = buffer[index];
+        buffer[index] = move;
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index] = score;
+        return move;
+    }
+
+    private void rememberCutoff(Color player, int move, int depth, int ply) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[][] scores = history[player.ordinal()];
+        scores[Move.from(move)][Move.to(move)] += depth * depth;
+        if (scores[Move.from(move)][Move.to(move)] > historyLimit) {
+            for (int[] row : scores) {
+                for (int to = 0; to < row.length; to++) {
+                    row[to] /= 2;
+                }
+            }
+        }
+    }
+
+    // Mate scores are stored relative to the position rather than the root, so that they stay correct
+    // when the same position is reached at a different ply.
+    private static int toTableScore(int score, int ply) {
+        if (score >= SearchEngine.mateScore - maxPly) {
+            return score + ply;
+        } else if (score <= -SearchEngine.mateScore + maxPly) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTableScore(int score, int ply) {
+        if (score >= SearchEngine.mateScore - maxPly) {
+            return score - ply;
+        } else if (score <= -SearchEngine.mateScore + maxPly) {
+            return score + ply;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,343 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Chooses moves for a Board by searching. Several threads search the same position at once ("Lazy SMP"):
+ * they share one transposition table, and the helpers' results reach the main thread only through it.
+ * Helper threads start at staggered depths so that they fill the table with different parts of the tree.
+ * The main thread decides when the search ends and reports its progress.
+ * One search runs at a time; stop() may be called from any thread.
+ */
+public class SearchEngine {
+
+    public static final int mateScore = 30000; // score of mating on the next move; mating later scores one less per ply
+
+    private static final long moveOverhead = 10; // milliseconds kept back per move for communication
+    private static final int defaultMovesToGo = 30;
+
+    private TranspositionTable table;
+    private OpeningBook book;
+    private Tablebase tablebase;
+    private Network network;
+    private AnalysisCache cache;
+    private final int[] cacheMoves = new int[Board.maxMoves];
+    private final int[] bookMoves = new int[Board.maxMoves];
+    private final int[] bookWeights = new int[Board.maxMoves];
+    private final Random bookRandom = new Random();
+    private List<Search> searches = new ArrayList<Search>();
+    private ExecutorService helpers;
+
+    private volatile boolean stopped;
+    private volatile boolean infinite;
+    private long startTime; // System.nanoTime() at the start of the search
+    private volatile long clockStart; // System.nanoTime() from which the time limits count: the start, or the ponder hit
+    private long softLimit; // nanoseconds after which no new iteration is started, or 0
+    private long hardLimit; // nanoseconds after which the search is aborted, or 0
+    private long nodeLimit;
+    private int depthLimit;
+
+    public SearchEngine(int threads, int hashMegabytes) {
+        table = new TranspositionTable(hashMegabytes);
+        setThreads(threads);
+    }
+
+    /**
+     * Change the number of search threads. Must not be called during a search.
+     */
+    public void setThreads(int threads) {
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+        searches.clear();
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            searches.add(new Search(this, table));
+        }
+        helpers = searches.size() > 1 ? Executors.newFixedThreadPool(searches.size() - 1, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "search-helper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }) : null;
+    }
+
+    /**
+     * Replace the transposition table with an empty one of a new size. Must not be called during a search.
+     */
+    public void setHashSize(int megabytes) {
+        table = new TranspositionTable(megabytes);
+        setThreads(searches.size());
+    }
+
+    /**
+     * Play moves from an opening book, without searching, while the position is in it.
+     * @param book: the book, or null to always search
+     */
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Play the moves of an endgame tablebase, without searching, in the positions it covers.
+     * @param tablebase: the tablebase, or null to always search
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Answer positions from an analysis cache, without searching, when it holds a result at least as deep as
+     * a search with a depth limit asks for; and store each search's result there. Searches on the clock, by time
+     * or by nodes always search. Positions that have occurred before in the game, or near the fifty-move rule,
+     * are neither answered nor stored, since their scores depend on the game's history; and a cached move
+     * is only played if it is legal and the position has the cached number of legal moves.
+     * @param cache: the cache, or null to always search
+     */
+    public void setAnalysisCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Evaluate positions with a neural network instead of Evaluation. Must not be called during a search.
+     * The transposition table is cleared, since its scores came from the other evaluation.
+     * @param network: the network, or null for Evaluation
+     */
+    public void setNetwork(Network network) {
+        if (network != this.network) {
+            this.network = network;
+            table.clear();
+        }
+    }
+
+    Network getNetwork() {
+        return network;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Forget everything learned in earlier searches, e.g. before a new game.
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * Search the board's position and return the best move found. Blocks until the limits are reached
+     * or stop() is called. If the position is in the opening book, a book move is returned at once instead
+     * (with depth 0), unless the search is infinite; likewise the tablebase's move, with its exact score,
+     * if the tablebase covers the position, and the analysis cache's result if it is deep enough
+     * (see setAnalysisCache()).
+     * The board is not changed.
+     * @param board: the position to search
+     * @param limits: when to stop
+     * @param listener: told about each completed depth, or null
+     * @return the result of the search
+     */
+    public SearchResult search(final Board board, SearchLimits limits, SearchListener listener) {
+        startTime = System.nanoTime();
+        if (book != null && !limits.infinite) {
+            int bookMove = book.pickMove(board, bookRandom, bookMoves, bookWeights);
+            if (bookMove != Move.none) {
+                return new SearchResult(bookMove, 0, 0, 0, elapsedMillis(), new int[] {bookMove});
+            }
+        }
+        if (tablebase != null && !limits.infinite) {
+            int tablebaseMove = tablebase.bestMove(board);
+            if (tablebaseMove != Move.none) {
+                return new SearchResult(tablebaseMove, tablebase.probe(board), 0, 0, elapsedMillis(), new int[] {tablebaseMove});
+            }
+        }
+        if (cache != null && !limits.infinite && limits.depth > 0) {
+            long data = cache.probe(board.getKey());
+            if (data != 0 && AnalysisCache.depth(data) >= limits.depth && isCachedResultValid(board, data)) {
+                int move = AnalysisCache.move(data);
+                return new SearchResult(move, AnalysisCache.score(data), AnalysisCache.depth(data), 0, elapsedMillis(),
+                        move == Move.none ? new int[0] : new int[] {move});
+            }
+        }
+        stopped = false;
+        clockStart = startTime;
+        infinite = limits.infinite;
+        setTimeLimits(board.getCurrentPlayer(), limits);
+        nodeLimit = limits.nodes;
+        depthLimit = limits.depth > 0 ? Math.min(limits.depth, Search.maxPly - 1) : Search.maxPly - 1;
+        table.newSearch();
+        List<Future<SearchResult>> results = new ArrayList<Future<SearchResult>>();
+        for (int i = 1; i < searches.size(); i++) {
+            final Search helper = searches.get(i);
+            final int depthOffset = i % 2;
+            results.add(helpers.submit(new Callable<SearchResult>() {
+                public SearchResult call() {
+                    return helper.run(board, Search.maxPly - 1, depthOffset, null);
+                }
+            }));
+        }
+        SearchResult result = searches.get(0).run(board, depthLimit, 0, listener);
+        // In infinite mode the main thread may finish early (e.g. on a forced mate); the result waits for stop().
+        while (infinite && !stopped) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        stopped = true;
+        for (Future<SearchResult> helperResult : results) {
+            try {
+                helperResult.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        if (cache != null && result.depth > 0 && !dependsOnHistory(board, result.depth)) {
+            cache.store(board.getKey(), result.bestMove, result.score, result.depth, board.generateMoves(cacheMoves, true));
+        }
+        return new SearchResult(result.bestMove, result.score, result.depth, totalNodes(), elapsedMillis(), result.pv);
+    }
+
+    /**
+     * Check a cached result against the board, so that a result for another position with the same key,
+     * or one whose score the game's history would change, is not played. Nothing is generated: the move is tested
+     * on its own, and a result without a move must be for a position without one.
+     */
+    private static boolean isCachedResultValid(Board board, long data) {
+        if (dependsOnHistory(board, AnalysisCache.depth(data))) {
+            return false;
+        }
+        int move = AnalysisCache.move(data);
+        return move == Move.none ? !board.hasLegalMove() : board.isLegalMove(move);
+    }
+
+    /**
+     * @return whether a search of the given depth could score the position differently depending on how it was
+     * reached: it has occurred before, or the fifty-move rule could end the game within the search
+     */
+    private static boolean dependsOnHistory(Board board, int depth) {
+        return board.repetitions() > 0 || board.getHalfmoveClock() + depth >= 100;
+    }
+
+    /**
+     * End the current search as soon as possible. The search returns the best move found so far.
+     */
+    public void stop() {
+        infinite = false;
+        stopped = true;
+    }
+
+    /**
+     * Turn an infinite (pondering) search into a normal one, so that it stops on its time limits,
+     * counted from now: the time spent pondering was the opponent's. Does nothing to a normal search.
+     */
+    public void stopWhenLimitsReached() {
+        if (infinite) {
+            clockStart = System.nanoTime();
+            infinite = false;
+        }
+    }
+
+    public void shutdown() {
+        stop();
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+
+    long totalNodes() {
+        long nodes = 0;
+        for (Search search : searches) {
+            nodes += search.getNodes();
+        }
+        return nodes;
+    }
+
+    long elapsedMillis() {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    /**
+     * Called by every search thread every few thousand nodes.
+     */
+    boolean shouldStop() {
+        if (stopped) {
+            return true;
+        }
+        if (infinite) {
+            return false;
+        }
+        if ((hardLimit > 0 && System.nanoTime() - clockStart > hardLimit) || (nodeLimit > 0 && totalNodes() >= nodeLimit)) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Called by the main thread after each iteration. A new iteration would likely not finish in the time left
+     * once the soft limit has passed, so the search ends there.
+     */
+    boolean shouldStartIteration(SearchResult result) {
+        if (infinite) {
+            return !stopped;
+        }
+        if (result.isMateScore() && result.depth >= 2 * Math.abs(result.mateIn())) {
+            return false; // the mate has been seen to the end, so searching deeper cannot change it
+        }
+        return !shouldStop() && (softLimit == 0 || System.nanoTime() - clockStart < softLimit);
+    }
+
+    private void setTimeLimits(Color player, SearchLimits limits) {
+        long time = player == Color.White ? limits.whiteTime : limits.blackTime;
+        long increment = player == Color.White ? limits.whiteIncrement : limits.blackIncrement;
+        if (limits.moveTime > 0) {
+            softLimit = hardLimit = millisToNanos(Math.max(1, limits.moveTime - moveOverhead));
+        } else if (time > 0) {
+            int movesToGo = limits.movesToGo > 0 ? limits.movesToGo : defaultMovesToGo;
+            long available = Math.max(1, time - moveOverhead);
+            long target = available / movesToGo + increment * 3 / 4;
+            // Never plan to use more than a fraction of the clock, however many moves are left.
+            long hard = Math.min(available * 3 / 4, target * 4);
+            softLimit = millisToNanos(Math.max(1, Math.min(target, hard) / 2));
+            hardLimit = millisToNanos(Math.max(1, hard));
+        } else {
+            softLimit = hardLimit = 0;
+        }
+    }
+
+    private static long millisToNanos(long millis) {
+        return millis * 1000000;
+    }
+
+    /**
+     * Benchmark: search the start position to a fixed depth with 1, 2, 4, ... threads up to the given number,
+     * printing the time to reach each depth and the nodes per second.
+     * Arguments: depth (default 8), maximum threads (default: all processors), hash size in MB (default 64).
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int hash = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            System.out.println("Threads: " + threads);
+            SearchEngine engine = new SearchEngine(threads, hash);
+            SearchResult result = engine.search(new Board(), SearchLimits.depth(depth), new SearchListener() {
+                public void iterationComplete(SearchResult result) {
+                    System.out.println("  " + result);
+                }
+            });
+            System.out.println("Best move: " + Move.toString(result.bestMove) + ", " + result.nodesPerSecond() + " nodes/sec");
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for each completed iteration of a search thread, lasting from the start of the iteration.
+ */
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Category("Chess")
+@Description("A completed depth of iterative deepening")
+class SearchIterationEvent extends jdk.jfr.Event {
+    @Label("Depth")
+    int depth;
+
+    @Label("Score")
+    int score;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Nodes")
+    long nodes; // by this thread
+
+    @Label("Main Thread")
+    boolean mainThread; // false for helper threads
+}
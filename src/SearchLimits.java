@@ -0,0 +1,26 @@
+/**
+ * Limits on a search, as given by a UCI "go" command. A value of 0 means no limit of that kind;
+ * a search with no limits at all runs until it is stopped.
+ * Times are in milliseconds.
+ */
+public class SearchLimits {
+    public int depth;
+    public long nodes;
+    public long moveTime; // exact time to spend on this move
+    public long whiteTime, blackTime; // time left on each player's clock
+    public long whiteIncrement, blackIncrement;
+    public int movesToGo; // moves until the next time control, or 0 if the rest of the game must be played in the remaining time
+    public boolean infinite; // search until stopped, even once the depth limit is reached
+
+    public static SearchLimits depth(int depth) {
+        SearchLimits limits = new SearchLimits();
+        limits.depth = depth;
+        return limits;
+    }
+
+    public static SearchLimits moveTime(long moveTime) {
+        SearchLimits limits = new SearchLimits();
+        limits.moveTime = moveTime;
+        return limits;
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * Receives progress reports from a search, on the thread running the search.
+ */
+public interface SearchListener {
+    /**
+     * Called each time iterative deepening completes a depth.
+     * @param result: the best move and principal variation at that depth, and the nodes and time used so far
+     */
+    public void iterationComplete(SearchResult result);
+}
@@ -0,0 +1,54 @@
+/**
+ * The outcome of a search, or of one iteration of it.
+ */
+public class SearchResult {
+    public final int bestMove; // encoded by Move, or Move.none if the position has no legal moves
+    public final int score; // centipawns from the point of view of the player to move; see SearchEngine.mateScore
+    public final int depth; // the last depth searched completely
+    public final long nodes; // nodes searched by all threads
+    public final long timeMillis; // time since the search started
+    public final int[] pv; // the principal variation, starting with bestMove
+
+    public SearchResult(int bestMove, int score, int depth, long nodes, long timeMillis, int[] pv) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.timeMillis = timeMillis;
+        this.pv = pv;
+    }
+
+    public long nodesPerSecond() {
+        return timeMillis == 0 ? nodes * 1000 : nodes * 1000 / timeMillis;
+    }
+
+    /**
+     * @return whether the score is a forced mate, for either player
+     */
+    public boolean isMateScore() {
+        return Math.abs(score) >= SearchEngine.mateScore - Search.maxPly;
+    }
+
+    /**
+     * @return the number of moves (not plies) until mate, negative if the player to move is mated
+     */
+    public int mateIn() {
+        int plies = SearchEngine.mateScore - Math.abs(score);
+        return score > 0 ? (plies + 1) / 2 : -(plies / 2);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("depth ").append(depth);
+        builder.append(isMateScore() ? " mate " + mateIn() : " cp " + score);
+        builder.append(" nodes ").append(nodes);
+        builder.append(" nps ").append(nodesPerSecond());
+        builder.append(" time ").append(timeMillis);
+        builder.append(" pv");
+        for (int move : pv) {
+            builder.append(' ').append(Move.toString(move));
+        }
+        return builder.toString();
+    }
+}
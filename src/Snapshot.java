@@ -0,0 +1,122 @@
+/**
+ * An immutable copy of a position, packed into four longs so that it is cheap to copy, store and compare,
+ * and safe to share between threads. Taken with Board.snapshot() and turned back into a board with toBoard().
+ * Two snapshots are equal when everything a FEN records is equal, including the move counters.
+ */
+public final class Snapshot {
+
+    static final int maxFullmoveNumber = (1 << 20) - 1;
+
+    private static final Piece[] pieceTypes = Piece.values();
+
+    // Bit i of occupied is set for each occupied square. Going through the occupied squares in order,
+    // the n-th piece has a 4-bit code (8 * Color.ordinal() + Piece.ordinal()) in bits 4n to 4n + 3
+    // of the 128 bits made of lowPieces followed by highPieces; at most 32 pieces fit, as in any real game.
+    private final long occupied;
+    private final long lowPieces;
+    private final long highPieces;
+    // Bit 0: Black to move; bits 1-4: castling rights; 5-11: en passant square + 1;
+    // 12-27: halfmove clock; 28-47: fullmove number.
+    private final long state;
+
+    Snapshot(Board board) {
+        long occupiedSquares = 0;
+        long low = 0;
+        long high = 0;
+        int count = 0;
+        for (int pos = 0; pos < 64; pos++) {
+            Piece piece = board.pieceAt(pos);
+            if (piece == null) {
+                continue;
+            }
+            occupiedSquares |= 1L << pos;
+            long code = (board.getBitboard(Color.White, piece) & (1L << pos)) != 0 ? piece.ordinal() : 8 + piece.ordinal();
+            if (count < 16) {
+                low |= code << (4 * count);
+            } else {
+                high |= code << (4 * (count - 16));
+            }
+            count++;
+        }
+        occupied = occupiedSquares;
+        lowPieces = low;
+        highPieces = high;
+        state = (board.getCurrentPlayer() == Color.Black ? 1 : 0)
+                | (long) board.getCastlingRights() << 1
+                | (long) (board.getEnPassantSquare() + 1) << 5
+                | (long) board.getHalfmoveClock() << 12
+                | (long) board.getFullmoveNumber() << 28;
+    }
+
+    /**
+     * Set up a new board in this position. The board has no moves to unmake.
+     */
+    public Board toBoard() {
+        return new Board(this);
+    }
+
+    public Color getCurrentPlayer() {
+        return (state & 1) == 0 ? Color.White : Color.Black;
+    }
+
+    long occupied() {
+        return occupied;
+    }
+
+    /**
+     * The code of the n-th piece, counting occupied squares from a1 upwards.
+     */
+    int pieceCode(int n) {
+        return (int) ((n < 16 ? lowPieces >>> (4 * n) : highPieces >>> (4 * (n - 16))) & 0xF);
+    }
+
+    static Color color(int code) {
+        return code < 8 ? Color.White : Color.Black;
+    }
+
+    static Piece piece(int code) {
+        return pieceTypes[code & 0x7];
+    }
+
+    int castlingRights() {
+        return (int) (state >>> 1) & 0xF;
+    }
+
+    int enPassantSquare() {
+        return ((int) (state >>> 5) & 0x7F) - 1;
+    }
+
+    int halfmoveClock() {
+        return (int) (state >>> 12) & 0xFFFF;
+    }
+
+    int fullmoveNumber() {
+        return (int) (state >>> 28) & maxFullmoveNumber;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Snapshot)) {
+            return false;
+        }
+        Snapshot snapshot = (Snapshot) other;
+        return occupied == snapshot.occupied && lowPieces == snapshot.lowPieces
+                && highPieces == snapshot.highPieces && state == snapshot.state;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = occupied * 0x9E3779B97F4A7C15L + lowPieces;
+        hash = hash * 0x9E3779B97F4A7C15L + highPieces;
+        hash = hash * 0x9E3779B97F4A7C15L + state;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return the position in Forsyth-Edwards Notation
+     */
+    @Override
+    public String toString() {
+        return toBoard().toFen();
+    }
+}
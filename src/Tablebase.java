@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exact results for endgames with few pieces: whether the player to move wins, draws or loses with best play,
+ * and how many moves the mate takes. Each set of pieces (KQvK, KRvK, KBNvK, KPvK, KRvKB...) has its own
+ * EndgameTable of up to five pieces, a few bits per position, stored in a directory as "<name>.ctb".
+ * Tables are generated by retrograde analysis (see TablebaseGenerator) and memory-mapped when read,
+ * so opening them costs nothing and a probe is a few array lookups. A tablebase can be probed by any number
+ * of threads at once, but not while it is generating a table.
+ *
+ * Positions with castling rights are not covered, and distances to mate ignore the fifty-move rule.
+ */
+public class Tablebase {
+
+    public static final int unknown = Integer.MIN_VALUE; // probe() result for positions no table covers
+    public static final String fileSuffix = ".ctb";
+
+    private final Path directory;
+    private final ConcurrentHashMap<Long, EndgameTable> tables = new ConcurrentHashMap<Long, EndgameTable>(); // by material key
+
+    /**
+     * Create a tablebase that keeps the tables it generates in memory only.
+     */
+    public Tablebase() {
+        directory = null;
+    }
+
+    /**
+     * Map every table in a directory. Tables generated later are written there too.
+     * @throws IOException if the directory or a table in it cannot be read
+     */
+    public Tablebase(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + fileSuffix)) {
+            for (Path file : files) {
+                EndgameTable table = EndgameTable.load(file);
+                tables.put(table.materialKey, table);
+            }
+        }
+    }
+
+    /**
+     * Generate a table, and first every table its positions can turn into by a capture or promotion,
+     * unless the tablebase has them already.
+     * @param material: the pieces, e.g. "KRvK" or "KBNvK"; either side may have the stronger pieces
+     * @param threads: how many threads to generate with
+     * @throws IllegalArgumentException if the name is malformed, has more than five pieces, or needs more memory
+     * to generate than the heap can spare
+     */
+    public void generate(String material, int threads) throws IOException {
+        generate(EndgameTable.parse(material), threads);
+    }
+
+    private void generate(long materialKey, int threads) throws IOException {
+        materialKey = EndgameTable.canonical(materialKey);
+        if (materialKey == 0 || tables.containsKey(materialKey)) {
+            return;
+        }
+        for (int color = 0; color < 2; color++) {
+            for (int piece = 0; piece < Piece.King.ordinal(); piece++) {
+                if (EndgameTable.pieceCount(materialKey, color, piece) == 0) {
+                    continue;
+                }
+                long captured = EndgameTable.withPiece(materialKey, color, piece, -1);
+                generate(captured, threads);
+                if (piece == Piece.Pawn.ordinal()) {
+                    for (int promotion = Piece.Knight.ordinal(); promotion <= Piece.Queen.ordinal(); promotion++) {
+                        long promoted = EndgameTable.withPiece(captured, color, promotion, 1);
+                        generate(promoted, threads);
+                        // A pawn can also promote by capturing any of the opponent's pieces but the king.
+                        for (int victim = 0; victim < Piece.King.ordinal(); victim++) {
+                            if (victim != Piece.Pawn.ordinal() && EndgameTable.pieceCount(materialKey, 1 - color, victim) > 0) {
+                                generate(EndgameTable.withPiece(promoted, 1 - color, victim, -1), threads);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        EndgameTable table = new EndgameTable(materialKey);
+        // Registered before it is filled in, so that the generator can probe positions of the table itself.
+        tables.put(materialKey, table);
+        try {
+            new TablebaseGenerator(this, table, threads).run();
+        } catch (RuntimeException e) {
+            tables.remove(materialKey);
+            throw e;
+        }
+        table = table.pack();
+        tables.put(materialKey, table);
+        if (directory != null) {
+            table.write(directory.resolve(table.name + fileSuffix));
+        }
+    }
+
+    /**
+     * @return whether the tablebase has the table for some pieces, e.g. "KRvK", with either side having them
+     */
+    public boolean contains(String material) {
+        long key = EndgameTable.parse(material);
+        return key == 0 || tables.containsKey(EndgameTable.canonical(key));
+    }
+
+    /**
+     * @return the table for some pieces, e.g. "KRvK", or null if the tablebase does not have it
+     */
+    EndgameTable getTable(String material) {
+        return tables.get(EndgameTable.canonical(EndgameTable.parse(material)));
+    }
+
+    /**
+     * Look up the board's position.
+     * @return the score from the point of view of the player to move, as scored by the search:
+     * SearchEngine.mateScore minus the plies to mate for a win, -SearchEngine.mateScore plus the plies to mate
+     * for a loss and 0 for a draw; or unknown if no table covers the position
+     */
+    public int probe(Board board) {
+        int code = probeCode(board, new int[EndgameTable.maxPieces], new int[EndgameTable.maxPieces]);
+        if (EndgameTable.isWin(code)) {
+            return SearchEngine.mateScore - EndgameTable.plies(code);
+        } else if (EndgameTable.isLoss(code)) {
+            return -SearchEngine.mateScore + EndgameTable.plies(code);
+        }
+        return code == EndgameTable.draw ? 0 : unknown;
+    }
+
+    /**
+     * Find the move that mates soonest in a won position, holds a drawn one, or puts off mate longest in a lost one.
+     * @return the move, or Move.none if no table covers the position or it has no legal moves
+     */
+    public int bestMove(Board board) {
+        Board position = new Board(board);
+        int[] squares = new int[EndgameTable.maxPieces];
+        int[] work = new int[EndgameTable.maxPieces];
+        if (probeCode(position, squares, work) < 0) {
+            return Move.none;
+        }
+        int[] moves = new int[Board.maxMoves];
+        int count = position.generateMoves(moves, true);
+        int bestMove = Move.none;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            int score = probe(position);
+            position.unmakeMove();
+            if (score == unknown) {
+                return Move.none;
+            }
+            if (-score > bestScore) {
+                bestScore = -score;
+                bestMove = moves[i];
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Look up the board's position, including what an en passant capture changes, which the tables leave out.
+     * The board is changed while en passant captures are tried, but restored.
+     * @return the table's code for the position (see EndgameTable), with EndgameTable.unresolved for positions
+     * of a table being generated that are not solved yet, or -1 if no table covers the position
+     */
+    int probeCode(Board board, int[] squares, int[] work) {
+        if (board.getCastlingRights() != 0) {
+            return -1;
+        }
+        long key = EndgameTable.materialKey(board);
+        if (key == 0) {
+            return EndgameTable.draw; // kings alone
+        }
+        boolean swapColors = false;
+        EndgameTable table = tables.get(key);
+        if (table == null) {
+            swapColors = true;
+            table = tables.get(EndgameTable.swapColors(key));
+            if (table == null) {
+                return -1;
+            }
+        }
+        int code = table.code(table.index(board, swapColors, squares, work));
+        int enPassant = board.getEnPassantSquare();
+        if (enPassant < 0) {
+            return code;
+        }
+        // The table assumes there is no en passant capture, which only a capture can improve on.
+        int[] moves = new int[Board.maxMoves];
+        int count = board.generateMoves(moves, true);
+        for (int i = 0; i < count; i++) {
+            if (Move.to(moves[i]) != enPassant || board.pieceAt(Move.from(moves[i])) != Piece.Pawn) {
+                continue;
+            }
+            board.makeMove(moves[i]);
+            int reply = probeCode(board, squares, work);
+            board.unmakeMove();
+            if (reply < 0) {
+                return -1;
+            }
+            code = better(code, TablebaseGenerator.parentCode(reply));
+        }
+        return code;
+    }
+
+    /**
+     * @return the better code for the player to move; an unresolved code is only beaten by a win,
+     * which is what it would come to if it turned out to be a quicker win
+     */
+    private static int better(int a, int b) {
+        if (a == EndgameTable.unresolved || b == EndgameTable.unresolved) {
+            int other = a == EndgameTable.unresolved ? b : a;
+            return EndgameTable.isWin(other) ? other : EndgameTable.unresolved;
+        }
+        return rank(a) >= rank(b) ? a : b;
+    }
+
+    /**
+     * Order codes from worst to best for the player to move: quick losses, slow losses, draws, slow wins, quick wins.
+     */
+    private static int rank(int code) {
+        if (EndgameTable.isWin(code)) {
+            return 1000 - EndgameTable.moves(code);
+        }
+        return EndgameTable.isLoss(code) ? -1000 + EndgameTable.moves(code) : 0;
+    }
+
+    /**
+     * Generate tables and write them to a directory.
+     * Arguments: the directory, then the tables, e.g. "KRvK KBNvK"; the sub-tables they need come first.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: Tablebase directory material...");
+            return;
+        }
+        Tablebase tablebase = new Tablebase(Paths.get(args[0]));
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            long start = System.nanoTime();
+            tablebase.generate(args[i], threads);
+            System.out.println(args[i] + ": " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    }
+}
@@ -0,0 +1,391 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fills in an EndgameTable by retrograde analysis: starting from the checkmates, it works backwards one ply
+ * at a time. The positions solved at ply n (mated in n/2 moves, or mating in (n+1)/2) are those a move
+ * leads to from a position solved at ply n - 1, found by taking moves back on the squares alone, or those
+ * whose moves out of the table (captures and promotions, looked up in smaller tables) settle them at ply n.
+ * Each such candidate is checked forwards with Board's move generator: a win needs one move to a position
+ * lost for the opponent, a loss needs every move to lead to a position won for the opponent. Positions never
+ * solved are draws. Each ply is split across the threads; the positions they set at one ply are never
+ * read as deciding by another thread at that ply, so they need no locks.
+ */
+final class TablebaseGenerator {
+
+    private static final int chunkSize = 4096;
+    private static final int maxPlies = 2 * EndgameTable.maxWinMoves - 1;
+
+    private final Tablebase tablebase;
+    private final EndgameTable table;
+    private final int threads;
+    private final AtomicLongArray visited; // positions already checked at the current ply, one bit each
+    private final IntList[] scheduled = new IntList[maxPlies + 1]; // positions to check at a later ply
+
+    /**
+     * A growable array of ints.
+     */
+    private static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(IntList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+    }
+
+    /**
+     * What one thread found while handling a part of a ply.
+     */
+    private static final class Result {
+        final IntList solved = new IntList(); // positions set at the ply
+        final IntList[] scheduled = new IntList[maxPlies + 1]; // positions to check again at a later ply, by ply
+
+        void schedule(int index, int ply) {
+            if (scheduled[ply] == null) {
+                scheduled[ply] = new IntList();
+            }
+            scheduled[ply].add(index);
+        }
+    }
+
+    /**
+     * The state of one thread: a board to check positions on and scratch space.
+     */
+    private final class Worker {
+        final Board board = new Board();
+        final int[] moves = new int[Board.maxMoves];
+        final int[] squares = new int[EndgameTable.maxPieces];
+        final int[] retroSquares = new int[EndgameTable.maxPieces]; // the position moves are taken back in
+        final int[] probeSquares = new int[EndgameTable.maxPieces];
+        final int[] work = new int[EndgameTable.maxPieces];
+
+        /**
+         * Set up the board for an index.
+         * @return false if the index is not the canonical index of a legal position
+         */
+        boolean setUp(int index) {
+            int player = table.decode(index, squares);
+            return table.indexOf(squares, player, work) == index
+                    && board.setPieces(squares, table.colors, table.pieces, table.count, Color.values()[player]);
+        }
+
+        /**
+         * Work out what the board's position is worth from what is known about the positions its moves lead to.
+         * @return a code, EndgameTable.unresolved if it cannot be told yet
+         */
+        int evaluate() {
+            int count = board.generateMoves(moves, true);
+            if (count == 0) {
+                return board.isInCheck() ? EndgameTable.lossFlag : EndgameTable.draw;
+            }
+            int best = Integer.MAX_VALUE; // the quickest win
+            int longest = 0; // the slowest loss
+            boolean allLost = true;
+            for (int i = 0; i < count; i++) {
+                board.makeMove(moves[i]);
+                int reply = tablebase.probeCode(board, probeSquares, work);
+                board.unmakeMove();
+                if (reply < 0) {
+                    throw new IllegalStateException("Missing the table for a capture or promotion in " + table.name);
+                }
+                int code = parentCode(reply);
+                if (EndgameTable.isWin(code)) {
+                    best = Math.min(best, EndgameTable.moves(code));
+                } else if (EndgameTable.isLoss(code)) {
+                    longest = Math.max(longest, EndgameTable.moves(code));
+                } else {
+                    allLost = false;
+                }
+            }
+            if (best != Integer.MAX_VALUE) {
+                return best;
+            }
+            return allLost ? EndgameTable.lossFlag | longest : EndgameTable.unresolved;
+        }
+
+        /**
+         * Check an unsolved position that may be solved at the ply, setting it if it is.
+         */
+        void check(int index, int ply, Result result) {
+            if (!setUp(index)) {
+                return;
+            }
+            int code = evaluate();
+            if (code == EndgameTable.unresolved) {
+                return;
+            }
+            int plies = EndgameTable.plies(code);
+            if (plies <= ply) {
+                table.set(index, code);
+                result.solved.add(index);
+            } else {
+                result.schedule(index, plies);
+            }
+        }
+
+        /**
+         * Take back every move that can have led to a position, other than captures and promotions,
+         * and check the unsolved positions that come before it.
+         */
+        void checkPredecessors(int index, int ply, Result result) {
+            int[] squares = retroSquares;
+            int player = table.decode(index, squares);
+            int mover = 1 - player;
+            long occupied = 0;
+            for (int i = 0; i < table.count; i++) {
+                occupied |= 1L << squares[i];
+            }
+            for (int i = 0; i < table.count; i++) {
+                if (table.colors[i].ordinal() != mover) {
+                    continue;
+                }
+                int to = squares[i];
+                long origins = origins(table.pieces[i], table.colors[i], to, occupied) & ~occupied;
+                while (origins != 0) {
+                    squares[i] = Long.numberOfTrailingZeros(origins);
+                    origins &= origins - 1;
+                    int previous = table.indexOf(squares, mover, work);
+                    if (table.code(previous) == EndgameTable.unresolved && markVisited(previous)) {
+                        check(previous, ply, result);
+                    }
+                }
+                squares[i] = to;
+            }
+        }
+    }
+
+    TablebaseGenerator(Tablebase tablebase, EndgameTable table, int threads) {
+        this.tablebase = tablebase;
+        this.table = table;
+        this.threads = Math.max(1, threads);
+        visited = new AtomicLongArray((table.size + 63) / 64);
+    }
+
+    /**
+     * Fill in the table.
+     * @throws IllegalStateException if a needed smaller table is missing, or a mate takes too long to store
+     */
+    void run() {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "tablebase-generator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                return new Worker();
+            }
+        };
+        try {
+            // Ply 0: mark invalid indices, find the checkmates and stalemates, and schedule the positions
+            // that are settled by their moves out of the table alone.
+            List<Callable<Result>> tasks = new ArrayList<Callable<Result>>();
+            for (int start = 0; start < table.size; start += chunkSize) {
+                final int from = start;
+                final int to = (int) Math.min(table.size, (long) start + chunkSize);
+                tasks.add(new Callable<Result>() {
+                    public Result call() {
+                        Worker worker = workers.get();
+                        Result result = new Result();
+                        for (int index = from; index < to; index++) {
+                            if (!worker.setUp(index)) {
+                                table.set(index, EndgameTable.invalid);
+                                continue;
+                            }
+                            int code = worker.evaluate();
+                            if (code == EndgameTable.draw || code == EndgameTable.lossFlag) {
+                                table.set(index, code);
+                                if (code == EndgameTable.lossFlag) {
+                                    result.solved.add(index);
+                                }
+                            } else if (code != EndgameTable.unresolved) {
+                                result.schedule(index, EndgameTable.plies(code));
+                            }
+                        }
+                        return result;
+                    }
+                });
+            }
+            IntList solved = collect(pool, tasks);
+            for (int ply = 1; ply <= maxPlies; ply++) {
+                final IntList previous = solved;
+                final IntList due = scheduled[ply];
+                scheduled[ply] = null;
+                if (previous.size == 0 && due == null && !hasScheduled(ply)) {
+                    break;
+                }
+                for (int i = 0; i < visited.length(); i++) {
+                    visited.set(i, 0);
+                }
+                final int currentPly = ply;
+                tasks.clear();
+                for (int start = 0; start < previous.size; start += chunkSize) {
+                    final int from = start;
+                    final int to = Math.min(previous.size, start + chunkSize);
+                    tasks.add(new Callable<Result>() {
+                        public Result call() {
+                            Worker worker = workers.get();
+                            Result result = new Result();
+                            for (int i = from; i < to; i++) {
+                                worker.checkPredecessors(previous.values[i], currentPly, result);
+                            }
+                            return result;
+                        }
+                    });
+                }
+                for (int start = 0; due != null && start < due.size; start += chunkSize) {
+                    final int from = start;
+                    final int to = Math.min(due.size, start + chunkSize);
+                    tasks.add(new Callable<Result>() {
+                        public Result call() {
+                            Worker worker = workers.get();
+                            Result result = new Result();
+                            for (int i = from; i < to; i++) {
+                                int index = due.values[i];
+                                if (table.code(index) == EndgameTable.unresolved && markVisited(index)) {
+                                    worker.check(index, currentPly, result);
+                                }
+                            }
+                            return result;
+                        }
+                    });
+                }
+                solved = collect(pool, tasks);
+            }
+            // Whatever is left cannot be forced either way.
+            for (int index = 0; index < table.size; index++) {
+                if (table.code(index) == EndgameTable.unresolved) {
+                    table.set(index, EndgameTable.draw);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Run the tasks for a ply, merge what they scheduled for later plies and return the positions they solved.
+     */
+    private IntList collect(ExecutorService pool, List<Callable<Result>> tasks) {
+        IntList solved = new IntList();
+        try {
+            for (Future<Result> future : pool.invokeAll(tasks)) {
+                Result result = future.get();
+                solved.addAll(result.solved);
+                for (int ply = 0; ply <= maxPlies; ply++) {
+                    if (result.scheduled[ply] != null) {
+                        if (scheduled[ply] == null) {
+                            scheduled[ply] = new IntList();
+                        }
+                        scheduled[ply].addAll(result.scheduled[ply]);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating " + table.name);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return solved;
+    }
+
+    private boolean hasScheduled(int ply) {
+        for (int later = ply; later <= maxPlies; later++) {
+            if (scheduled[later] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true the first time it is called for a position at the current ply
+     */
+    private boolean markVisited(int index) {
+        long bit = 1L << index;
+        while (true) {
+            long bits = visited.get(index >>> 6);
+            if ((bits & bit) != 0) {
+                return false;
+            }
+            if (visited.compareAndSet(index >>> 6, bits, bits | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Find the squares a piece on a square can have come from with a move that did not capture or promote.
+     */
+    private static long origins(Piece piece, Color color, int sq, long occupied) {
+        switch (piece) {
+            case King:
+                return Attacks.king(sq);
+            case Queen:
+                return Attacks.queen(sq, occupied);
+            case Rook:
+                return Attacks.rook(sq, occupied);
+            case Bishop:
+                return Attacks.bishop(sq, occupied);
+            case Knight:
+                return Attacks.knight(sq);
+            default:
+                // A pawn steps back towards its own side, or two steps back to its starting rank.
+                int back = color == Color.White ? -8 : 8;
+                int behind = sq + back;
+                if (behind < 8 || behind >= 56 || (occupied & 1L << behind) != 0) {
+                    return 0;
+                }
+                long origins = 1L << behind;
+                if (sq / 8 == (color == Color.White ? 3 : 4)) {
+                    origins |= 1L << (behind + back);
+                }
+                return origins;
+        }
+    }
+
+    /**
+     * Turn the code of the position a move leads to into the value of the move for the player making it.
+     * @throws IllegalStateException if the win would take longer than a code can hold
+     */
+    static int parentCode(int code) {
+        if (EndgameTable.isLoss(code)) {
+            if (EndgameTable.moves(code) + 1 > EndgameTable.maxWinMoves) {
+                throw new IllegalStateException("A mate takes too long to store");
+            }
+            return EndgameTable.moves(code) + 1;
+        }
+        if (EndgameTable.isWin(code)) {
+            if (EndgameTable.moves(code) > EndgameTable.maxLossMoves) {
+                throw new IllegalStateException("A mate takes too long to store");
+            }
+            return EndgameTable.lossFlag | EndgameTable.moves(code);
+        }
+        return code;
+    }
+}
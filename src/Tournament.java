@@ -0,0 +1,332 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays many games between two engines at once, all in this process: each of a number of threads plays one game
+ * at a time on its own Board, with its own pair of single-threaded engines. Games start from an opening suite,
+ * each opening twice with colors swapped, and end by Board's rules (mate, stalemate, threefold repetition,
+ * the fifty-move rule), by a flag falling, or as a draw after a maximum number of plies. Every result goes into
+ * a MatchStatistics as soon as its game ends, and the tournament stops early once the statistics' SPRT decides.
+ * A decision stands: games still under way when it is made are finished but not counted.
+ */
+public class Tournament {
+
+    /**
+     * Creates the engines of one player; each thread playing games has its own.
+     */
+    public interface EngineFactory {
+        SearchEngine newEngine();
+    }
+
+    /**
+     * Told about each game when it ends. Called from the threads playing the games, one at a time.
+     */
+    public interface Listener {
+        void gameFinished(Game game, MatchStatistics statistics);
+    }
+
+    /**
+     * A finished game.
+     */
+    public static class Game {
+        public final int number; // counting from 0 in the order the games were started
+        public final String opening; // FEN of the position the game started from
+        public final boolean firstPlaysWhite;
+        public final GameState result;
+        public final boolean timeForfeit; // whether the loser ran out of time
+        public final int[] moves; // encoded by Move
+
+        Game(int number, String opening, boolean firstPlaysWhite, GameState result, boolean timeForfeit, int[] moves) {
+            this.number = number;
+            this.opening = opening;
+            this.firstPlaysWhite = firstPlaysWhite;
+            this.result = result;
+            this.timeForfeit = timeForfeit;
+            this.moves = moves;
+        }
+
+        /**
+         * @return the first player's score: 1 for a win, 0.5 for a draw, 0 for a loss
+         */
+        public double firstScore() {
+            if (result.isDraw()) {
+                return 0.5;
+            }
+            return (result == GameState.WhiteWin) == firstPlaysWhite ? 1 : 0;
+        }
+    }
+
+    // Balanced positions a few moves into common openings, used when no suite is given.
+    private static final String[] defaultOpenings = {
+            "e2e4 e7e5 g1f3 b8c6 f1b5 a7a6",
+            "e2e4 e7e5 g1f3 b8c6 f1c4 f8c5",
+            "e2e4 c7c5 g1f3 d7d6 d2d4 c5d4",
+            "e2e4 e7e6 d2d4 d7d5 b1c3 g8f6",
+            "e2e4 c7c6 d2d4 d7d5 b1c3 d5e4",
+            "d2d4 d7d5 c2c4 e7e6 b1c3 g8f6",
+            "d2d4 g8f6 c2c4 e7e6 g1f3 b7b6",
+            "d2d4 g8f6 c2c4 g7g6 b1c3 f8g7",
+            "c2c4 e7e5 b1c3 g8f6 g1f3 b8c6",
+            "g1f3 d7d5 g2g3 g8f6 f1g2 c7c6",
+    };
+
+    private static final long timeMargin = 50; // milliseconds a move may run past the end of the clock, for scheduling delays
+
+    private final EngineFactory first, second;
+    private final SearchLimits limits;
+    private final List<String> openings;
+    private int concurrency = Runtime.getRuntime().availableProcessors();
+    private int maxPlies = 400;
+    private Listener listener;
+    private volatile boolean stopped;
+    private boolean decided; // whether the statistics' SPRT has decided
+
+    /**
+     * @param first: the player whose score the statistics count
+     * @param second: its opponent
+     * @param limits: the clocks at the start of each game (whiteTime, blackTime and their increments), and the depth,
+     * nodes or time per move; the same for both players
+     * @param openings: the FENs of the positions to start games from, or null for a built-in suite
+     * @throws IllegalArgumentException if an opening is not a legal position with the game still going on
+     */
+    public Tournament(EngineFactory first, EngineFactory second, SearchLimits limits, List<String> openings) {
+        this.first = first;
+        this.second = second;
+        this.limits = limits;
+        if (openings == null) {
+            openings = new ArrayList<String>();
+            for (String line : defaultOpenings) {
+                openings.add(play(line.split(" ")));
+            }
+        }
+        if (openings.isEmpty()) {
+            throw new IllegalArgumentException("No openings");
+        }
+        for (String fen : openings) {
+            if (new Board(fen).getState() != GameState.Ongoing) {
+                throw new IllegalArgumentException("Game over in opening " + fen);
+            }
+        }
+        this.openings = new ArrayList<String>(openings);
+    }
+
+    /**
+     * @return the FEN of the position the moves lead to from the start
+     */
+    private static String play(String[] moves) {
+        Board board = new Board();
+        int[] legalMoves = new int[Board.maxMoves];
+        for (String name : moves) {
+            int move = board.findMove(name, legalMoves);
+            if (move == Move.none) {
+                throw new IllegalArgumentException("Illegal opening move " + name);
+            }
+            board.makeMove(move);
+        }
+        return board.toFen();
+    }
+
+    /**
+     * @param games: how many games to play at once; by default as many as there are processors
+     */
+    public void setConcurrency(int games) {
+        concurrency = Math.max(1, games);
+    }
+
+    /**
+     * @param plies: the length after which a game still going on is adjudicated a draw
+     */
+    public void setMaxPlies(int plies) {
+        maxPlies = plies;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Play games until there have been as many as asked for, the statistics' SPRT decides, or stop() is called.
+     * Games under way when stop() is called are finished and counted.
+     * @param games: the most games to play
+     * @param statistics: where to add the results
+     * @return the statistics
+     */
+    public MatchStatistics run(final int games, final MatchStatistics statistics) {
+        decided = statistics.decision() != MatchStatistics.Decision.Continue;
+        stopped = decided;
+        final AtomicInteger nextGame = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "tournament");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<Callable<Void>> players = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < concurrency; i++) {
+            players.add(new Callable<Void>() {
+                public Void call() {
+                    SearchEngine firstEngine = first.newEngine();
+                    SearchEngine secondEngine = second.newEngine();
+                    try {
+                        int number;
+                        while (!stopped && (number = nextGame.getAndIncrement()) < games) {
+                            Game game = play(number, firstEngine, secondEngine);
+                            finished(game, statistics);
+                        }
+                    } finally {
+                        firstEngine.shutdown();
+                        secondEngine.shutdown();
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> result : threads.invokeAll(players)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            threads.shutdownNow();
+        }
+        return statistics;
+    }
+
+    /**
+     * Stop starting games. The games under way are finished.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    private synchronized void finished(Game game, MatchStatistics statistics) {
+        if (decided) {
+            return;
+        }
+        statistics.add(game.firstScore());
+        if (statistics.decision() != MatchStatistics.Decision.Continue) {
+            decided = true;
+            stopped = true;
+        }
+        if (listener != null) {
+            listener.gameFinished(game, statistics);
+        }
+    }
+
+    /**
+     * Play a game. Even-numbered games give the first player white, odd-numbered ones give it black,
+     * and each pair of games starts from the same opening.
+     */
+    Game play(int number, SearchEngine firstEngine, SearchEngine secondEngine) {
+        String opening = openings.get(number / 2 % openings.size());
+        boolean firstPlaysWhite = number % 2 == 0;
+        firstEngine.clear();
+        secondEngine.clear();
+        Board board = new Board(opening);
+        boolean timed = limits.whiteTime > 0 || limits.blackTime > 0;
+        long[] clocks = {limits.whiteTime, limits.blackTime};
+        long[] increments = {limits.whiteIncrement, limits.blackIncrement};
+        int[] moves = new int[maxPlies];
+        int plies = 0;
+        GameState result = board.getState();
+        boolean timeForfeit = false;
+        while (result == GameState.Ongoing) {
+            if (plies >= maxPlies) {
+                result = GameState.Draw;
+                break;
+            }
+            Color player = board.getCurrentPlayer();
+            SearchEngine engine = (player == Color.White) == firstPlaysWhite ? firstEngine : secondEngine;
+            SearchLimits moveLimits = new SearchLimits();
+            moveLimits.depth = limits.depth;
+            moveLimits.nodes = limits.nodes;
+            moveLimits.moveTime = limits.moveTime;
+            moveLimits.movesToGo = limits.movesToGo;
+            if (timed) {
+                moveLimits.whiteTime = Math.max(1, clocks[0]);
+                moveLimits.blackTime = Math.max(1, clocks[1]);
+                moveLimits.whiteIncrement = increments[0];
+                moveLimits.blackIncrement = increments[1];
+            }
+            long start = System.nanoTime();
+            int move = engine.search(board, moveLimits, null).bestMove;
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            if (timed) {
+                int side = player.ordinal();
+                clocks[side] -= elapsed;
+                if (clocks[side] < -timeMargin) {
+                    result = player == Color.White ? GameState.BlackWin : GameState.WhiteWin;
+                    timeForfeit = true;
+                    break;
+                }
+                clocks[side] = Math.max(0, clocks[side]) + increments[side];
+            }
+            if (!board.move(Move.from(move), Move.to(move), Move.promotion(move))) {
+                throw new IllegalStateException("Engine played illegal move " + Move.toString(move) + " in " + board.toFen());
+            }
+            moves[plies++] = move;
+            result = board.getState();
+        }
+        return new Game(number, opening, firstPlaysWhite, result, timeForfeit, Arrays.copyOf(moves, plies));
+    }
+
+    /**
+     * Play the engine against itself and print the statistics after each game.
+     * Arguments: the number of games, the time control as "seconds+increment" or "depth=n",
+     * and optionally a file of opening FENs, one per line.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: Tournament games seconds+increment|depth=n [openings]");
+            return;
+        }
+        SearchLimits limits = new SearchLimits();
+        if (args[1].startsWith("depth=")) {
+            limits.depth = Integer.parseInt(args[1].substring("depth=".length()));
+        } else {
+            String[] clock = args[1].split("\\+");
+            limits.whiteTime = limits.blackTime = (long) (Double.parseDouble(clock[0]) * 1000);
+            if (clock.length > 1) {
+                limits.whiteIncrement = limits.blackIncrement = (long) (Double.parseDouble(clock[1]) * 1000);
+            }
+        }
+        List<String> openings = null;
+        if (args.length > 2) {
+            openings = new ArrayList<String>();
+            for (String line : Files.readAllLines(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                    openings.add(line.trim());
+                }
+            }
+        }
+        EngineFactory engine = new EngineFactory() {
+            public SearchEngine newEngine() {
+                return new SearchEngine(1, 16);
+            }
+        };
+        Tournament tournament = new Tournament(engine, engine, limits, openings);
+        tournament.setListener(new Listener() {
+            public void gameFinished(Game game, MatchStatistics statistics) {
+                System.out.println(statistics);
+            }
+        });
+        System.out.println(tournament.run(Integer.parseInt(args[0]), new MatchStatistics()));
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * A fixed-size table of search results keyed by Zobrist key, which any number of threads can use at once
+ * without locking. Each entry is two longs: the key XORed with the data, and the data itself.
+ * A reader only trusts an entry whose first long XORed with its second gives back the key it looked for,
+ * so an entry torn by two threads writing at the same time reads as a miss instead of a wrong result.
+ * Entries are grouped in buckets of two; a new result replaces the shallower or older entry of its bucket.
+ */
+public class TranspositionTable {
+
+    // Bound types, describing how a stored score relates to the true score of the position.
+    public static final int exact = 1;
+    public static final int lowerBound = 2; // the search failed high: the true score is at least this
+    public static final int upperBound = 3; // the search failed low: the true score is at most this
+
+    private static final int bucketSize = 2;
+    private static final int entryLongs = 2;
+
+    // Data layout: bits 0-15 move, 16-31 score (signed), 32-39 depth, 40-41 bound, 42-47 age.
+    // The bound is never 0 in a stored entry, so a data value of 0 always means a miss.
+    private static final int scoreShift = 16;
+    private static final int depthShift = 32;
+    private static final int boundShift = 40;
+    private static final int ageShift = 42;
+    private static final int ageMask = 0x3F;
+
+    private final long[] table;
+    private final int bucketMask;
+    private volatile int age;
+
+    /**
+     * @param megabytes: the size of the table; it is rounded down to a power of two number of buckets
+     */
+    public TranspositionTable(int megabytes) {
+        long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+        long buckets = Long.highestOneBit(bytes / (bucketSize * entryLongs * 8));
+        buckets = Math.min(buckets, 1L << 27); // keep the backing array within Java's array size limit
+        table = new long[(int) buckets * bucketSize * entryLongs];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * Look up a position.
+     * @param key: the position's Zobrist key
+     * @return the stored data, to be read with move(), score(), depth() and bound(), or 0 if there is none
+     */
+    public long probe(long key) {
+        int index = bucketIndex(key);
+        for (int i = 0; i < bucketSize; i++, index += entryLongs) {
+            long data = table[index + 1];
+            if ((table[index] ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Store a search result, replacing an entry for the same position if there is one,
+     * and otherwise whichever entry of the bucket is least valuable.
+     * @param key: the position's Zobrist key
+     * @param move: the best move found, or Move.none
+     * @param score: the score, which must fit in 16 signed bits
+     * @param depth: the depth searched, from 0 to 255
+     * @param bound: exact, lowerBound or upperBound
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int index = bucketIndex(key);
+        int replace = index;
+        int lowestValue = Integer.MAX_VALUE;
+        for (int i = 0; i < bucketSize; i++, index += entryLongs) {
+            long data = table[index + 1];
+            if ((table[index] ^ data) == key) {
+                // Keep the old best move if the new result has none.
+                if (move == Move.none) {
+                    move = move(data);
+                }
+                replace = index;
+                break;
+            }
+            // Entries from earlier searches are worth less than any entry from this one.
+            int value = depth(data) - 256 * ((age - age(data)) & ageMask);
+            if (data == 0) {
+                value = Integer.MIN_VALUE;
+            }
+            if (value < lowestValue) {
+                lowestValue = value;
+                replace = index;
+            }
+        }
+        long data = (move & 0xFFFFL)
+                | (score & 0xFFFFL) << scoreShift
+                | (long) (depth & 0xFF) << depthShift
+                | (long) bound << boundShift
+                | (long) age << ageShift;
+        table[replace] = key ^ data;
+        table[replace + 1] = data;
+    }
+
+    /**
+     * Mark the start of a new search, so that entries from earlier searches are replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & ageMask;
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = 0;
+        }
+    }
+
+    /**
+     * @return an estimate of how full the table is, in parts per thousand (as reported by UCI's hashfull)
+     */
+    public int hashfull() {
+        int used = 0;
+        int sample = Math.min(1000, table.length / entryLongs);
+        for (int i = 0; i < sample; i++) {
+            long data = table[i * entryLongs + 1];
+            if (data != 0 && age(data) == age) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> scoreShift);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> depthShift) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> boundShift) & 0x3;
+    }
+
+    private static int age(long data) {
+        return (int) (data >>> ageShift) & ageMask;
+    }
+
+    private int bucketIndex(long key) {
+        // The low bits of the key pick the bucket; the whole key is still checked on a probe.
+        return ((int) key & bucketMask) * bucketSize * entryLongs;
+    }
+}
@@ -0,0 +1,309 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Plays through the Universal Chess Interface, the text protocol spoken by chess GUIs and tournament managers,
+ * over standard input and output. Commands are read on the calling thread while searches run on a thread of
+ * their own, so "stop", "ponderhit" and "isready" are answered while a search is running; the search notices
+ * a stop, and its deadlines, within about a millisecond. Commands that change the engine or start a new search
+ * (ucinewgame, setoption, position, go) stop a running search first, so a GUI that sends them without "stop"
+ * gets the old search's best move rather than a hung engine. After "ponderhit" the clock limits count from then.
+ *
+ * Supported: uci, isready, ucinewgame, setoption (Hash, Threads, Ponder, Clear Hash, BookFile, TablebasePath,
+ * EvalFile), position (startpos or fen, then moves), go (wtime, btime, winc, binc, movestogo, depth, nodes,
+ * movetime, infinite, ponder), stop, ponderhit and quit. Unknown commands are ignored, as the protocol asks.
+ * A "position" command that only adds moves to the previous one plays just the new moves.
+ */
+public class UciFrontEnd implements ChessFrontEnd {
+
+    private static final int defaultHash = 16;
+    private static final int maxHash = 4096;
+    private static final int maxThreads = 256;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final SearchEngine engine = new SearchEngine(1, defaultHash);
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "uci-search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private Future<?> search; // the running or last search, or null
+    private volatile boolean ponderHit; // whether "ponderhit" has come for the running search
+    private Board board = new Board();
+    private String positionBase = "startpos"; // the position before the moves of the last "position" command
+    private final List<String> positionMoves = new ArrayList<String>(); // the moves of the last "position" command
+
+    public UciFrontEnd(InputStream in, OutputStream out) {
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        this.out = new PrintStream(out, false);
+        board.setFrontEnd(this);
+    }
+
+    /**
+     * Moves given to the engine always name their promotion piece; asked anyway, it promotes to a queen.
+     */
+    public Piece askPromotion() {
+        return Piece.Queen;
+    }
+
+    /**
+     * Read and carry out commands until "quit" or the end of the input. A search still running at the end is stopped
+     * and its best move sent.
+     */
+    public void run() throws IOException {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!handle(line.trim())) {
+                    break;
+                }
+            }
+        } finally {
+            stopSearch();
+            searchThread.shutdownNow();
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Carry out one command.
+     * @return false if it was "quit"
+     */
+    boolean handle(String line) {
+        String[] words = line.split("\\s+");
+        String command = words[0];
+        if (command.equals("uci")) {
+            send("id name Chess");
+            send("id author the Chess authors");
+            send("option name Hash type spin default " + defaultHash + " min 1 max " + maxHash);
+            send("option name Threads type spin default 1 min 1 max " + maxThreads);
+            send("option name Ponder type check default false");
+            send("option name Clear Hash type button");
+            send("option name BookFile type string default <empty>");
+            send("option name TablebasePath type string default <empty>");
+            send("option name EvalFile type string default <empty>");
+            send("uciok");
+        } else if (command.equals("isready")) {
+            send("readyok");
+        } else if (command.equals("ucinewgame")) {
+            stopSearch();
+            engine.clear();
+        } else if (command.equals("setoption")) {
+            stopSearch();
+            setOption(line);
+        } else if (command.equals("position")) {
+            stopSearch();
+            setPosition(words);
+        } else if (command.equals("go")) {
+            stopSearch();
+            go(words);
+        } else if (command.equals("stop")) {
+            stopSearch();
+        } else if (command.equals("ponderhit")) {
+            ponderHit = true;
+            engine.stopWhenLimitsReached();
+        } else if (command.equals("quit")) {
+            return false;
+        }
+        return true;
+    }
+
+    private void setOption(String line) {
+        int nameStart = line.indexOf(" name ");
+        if (nameStart < 0) {
+            return;
+        }
+        int valueStart = line.indexOf(" value ");
+        String name = (valueStart < 0 ? line.substring(nameStart + 6) : line.substring(nameStart + 6, valueStart)).trim();
+        String value = valueStart < 0 ? "" : line.substring(valueStart + 7).trim();
+        try {
+            if (name.equalsIgnoreCase("Hash")) {
+                engine.setHashSize(Math.max(1, Math.min(maxHash, Integer.parseInt(value))));
+            } else if (name.equalsIgnoreCase("Threads")) {
+                engine.setThreads(Math.max(1, Math.min(maxThreads, Integer.parseInt(value))));
+            } else if (name.equalsIgnoreCase("Clear Hash")) {
+                engine.clear();
+            } else if (name.equalsIgnoreCase("BookFile")) {
+                engine.setBook(isEmpty(value) ? null : new OpeningBook(Paths.get(value)));
+            } else if (name.equalsIgnoreCase("TablebasePath")) {
+                engine.setTablebase(isEmpty(value) ? null : new Tablebase(Paths.get(value)));
+            } else if (name.equalsIgnoreCase("EvalFile")) {
+                engine.setNetwork(isEmpty(value) ? null : Network.load(Paths.get(value)));
+            }
+        } catch (NumberFormatException e) {
+            send("info string bad value for " + name + ": " + value);
+        } catch (IOException e) {
+            send("info string cannot open " + value + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isEmpty(String value) {
+        return value.isEmpty() || value.equals("<empty>");
+    }
+
+    private void setPosition(String[] words) {
+        int movesStart = words.length;
+        for (int i = 1; i < words.length; i++) {
+            if (words[i].equals("moves")) {
+                movesStart = i;
+                break;
+            }
+        }
+        StringBuilder base = new StringBuilder();
+        for (int i = 1; i < movesStart; i++) {
+            base.append(i > 1 ? " " : "").append(words[i]);
+        }
+        List<String> moves = new ArrayList<String>();
+        for (int i = movesStart + 1; i < words.length; i++) {
+            moves.add(words[i]);
+        }
+        // A GUI sends the whole game before every move, so only play the moves not played already.
+        int played = 0;
+        if (base.toString().equals(positionBase) && moves.size() >= positionMoves.size()
+                && moves.subList(0, positionMoves.size()).equals(positionMoves)) {
+            played = positionMoves.size();
+        } else {
+            try {
+                if (base.toString().equals("startpos")) {
+                    board.reset();
+                } else if (words.length > 1 && words[1].equals("fen")) {
+                    board.setFen(base.substring(4));
+                } else {
+                    throw new IllegalArgumentException("Expected startpos or fen");
+                }
+            } catch (IllegalArgumentException e) {
+                send("info string bad position: " + e.getMessage());
+                board.reset();
+                base = new StringBuilder("startpos");
+                moves.clear();
+            }
+            positionBase = base.toString();
+            positionMoves.clear();
+        }
+        int[] legalMoves = new int[Board.maxMoves];
+        for (int i = played; i < moves.size(); i++) {
+            int move = board.findMove(moves.get(i), legalMoves);
+            if (move == Move.none) {
+                send("info string illegal move " + moves.get(i) + ", ignoring the rest");
+                break;
+            }
+            board.makeMove(move);
+            positionMoves.add(moves.get(i));
+        }
+    }
+
+    private void go(String[] words) {
+        final SearchLimits limits = new SearchLimits();
+        try {
+            for (int i = 1; i < words.length; i++) {
+                String word = words[i];
+                boolean hasValue = i + 1 < words.length;
+                if (word.equals("infinite") || word.equals("ponder")) {
+                    limits.infinite = true;
+                } else if (word.equals("wtime") && hasValue) {
+                    limits.whiteTime = Long.parseLong(words[++i]);
+                } else if (word.equals("btime") && hasValue) {
+                    limits.blackTime = Long.parseLong(words[++i]);
+                } else if (word.equals("winc") && hasValue) {
+                    limits.whiteIncrement = Long.parseLong(words[++i]);
+                } else if (word.equals("binc") && hasValue) {
+                    limits.blackIncrement = Long.parseLong(words[++i]);
+                } else if (word.equals("movestogo") && hasValue) {
+                    limits.movesToGo = Integer.parseInt(words[++i]);
+                } else if (word.equals("depth") && hasValue) {
+                    limits.depth = Integer.parseInt(words[++i]);
+                } else if (word.equals("nodes") && hasValue) {
+                    limits.nodes = Long.parseLong(words[++i]);
+                } else if (word.equals("movetime") && hasValue) {
+                    limits.moveTime = Long.parseLong(words[++i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            send("info string bad go command: " + e.getMessage());
+        }
+        final Board position = new Board(board);
+        ponderHit = false;
+        search = searchThread.submit(new Runnable() {
+            public void run() {
+                SearchResult result = engine.search(position, limits, new SearchListener() {
+                    public void iterationComplete(SearchResult result) {
+                        if (ponderHit) {
+                            engine.stopWhenLimitsReached(); // in case it came before the search had started
+                        }
+                        send(info(result));
+                    }
+                });
+                StringBuilder reply = new StringBuilder("bestmove ");
+                reply.append(result.bestMove == Move.none ? "0000" : Move.toString(result.bestMove));
+                if (result.pv.length > 1) {
+                    reply.append(" ponder ").append(Move.toString(result.pv[1]));
+                }
+                send(reply.toString());
+            }
+        });
+    }
+
+    private static String info(SearchResult result) {
+        StringBuilder builder = new StringBuilder("info depth ").append(result.depth);
+        builder.append(result.isMateScore() ? " score mate " + result.mateIn() : " score cp " + result.score);
+        builder.append(" nodes ").append(result.nodes);
+        builder.append(" nps ").append(result.nodesPerSecond());
+        builder.append(" time ").append(result.timeMillis);
+        builder.append(" pv");
+        for (int move : result.pv) {
+            builder.append(' ').append(Move.toString(move));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Stop the running search, if any, and wait for it to send its best move.
+     */
+    private void stopSearch() {
+        // A search that has not started yet would forget a single stop(), so keep asking until it ends.
+        while (search != null) {
+            engine.stop();
+            try {
+                search.get(1, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                send("info string search failed: " + e.getCause());
+            }
+            search = null;
+        }
+    }
+
+    /**
+     * Send a line to the GUI at once. Called by both threads, so that lines are never interleaved.
+     */
+    private synchronized void send(String line) {
+        out.print(line);
+        out.print('\n');
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        new UciFrontEnd(System.in, System.out).run();
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing. A position's key is the XOR of the keys of every piece on its square,
+ * the current castling rights, the en passant file (if any) and the side to move, so Board can update it
+ * incrementally: adding or removing a piece XORs the same value in or out.
+ */
+public final class Zobrist {
+
+    private static final long[][] pieceKeys = new long[2 * 6][64]; // indexed by (Color.ordinal() * 6 + Piece.ordinal()), then square
+    private static final long[] castlingKeys = new long[16]; // indexed by the castling rights mask
+    private static final long[] enPassantKeys = new long[8]; // indexed by file
+    private static final long blackToMoveKey;
+
+    static {
+        // A fixed seed keeps keys stable between runs, so they can be stored in files.
+        Random random = new Random(0x5EEDC4E55L);
+        for (long[] keys : pieceKeys) {
+            for (int sq = 0; sq < keys.length; sq++) {
+                keys[sq] = random.nextLong();
+            }
+        }
+        // No castling rights hashes to 0, so that rights can be combined by XOR per bit.
+        long[] rightKeys = {random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong()};
+        for (int rights = 0; rights < castlingKeys.length; rights++) {
+            for (int bit = 0; bit < rightKeys.length; bit++) {
+                if ((rights & (1 << bit)) != 0) {
+                    castlingKeys[rights] ^= rightKeys[bit];
+                }
+            }
+        }
+        for (int file = 0; file < enPassantKeys.length; file++) {
+            enPassantKeys[file] = random.nextLong();
+        }
+        blackToMoveKey = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    public static long piece(Color color, Piece piece, int sq) {
+        return pieceKeys[color.ordinal() * 6 + piece.ordinal()][sq];
+    }
+
+    public static long castling(int rights) {
+        return castlingKeys[rights];
+    }
+
+    /**
+     * @param sq: the en passant square, or -1 for none
+     */
+    public static long enPassant(int sq) {
+        return sq < 0 ? 0 : enPassantKeys[sq % 8];
+    }
+
+    public static long blackToMove() {
+        return blackToMoveKey;
+    }
+}
@@ -0,0 +1,201 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AnalysisCacheTest {
+
+    @Test
+    public void storeAndReopen() throws IOException {
+        Path file = Files.createTempFile("analysis", ".cache");
+        Files.delete(file);
+        try {
+            AnalysisCache cache = new AnalysisCache(file, 1);
+            assertEquals(1 << 16, cache.capacity());
+            int move = Move.encode(12, 28);
+            cache.store(42, move, -150, 12, 20);
+            long data = cache.probe(42);
+            assertEquals(move, AnalysisCache.move(data));
+            assertEquals(-150, AnalysisCache.score(data));
+            assertEquals(12, AnalysisCache.depth(data));
+            assertEquals(20, AnalysisCache.legalMoves(data));
+            assertEquals(0, cache.probe(43));
+            // A shallower result does not replace a deeper one of the same position.
+            cache.store(42, Move.none, 0, 3, 20);
+            assertEquals(12, AnalysisCache.depth(cache.probe(42)));
+            cache.close();
+
+            AnalysisCache reopened = new AnalysisCache(file, 64);
+            assertEquals(1 << 16, reopened.capacity());
+            assertEquals(data, reopened.probe(42));
+            // Four entries share a bucket; a result from this run pushes out the earlier run's entry.
+            long stride = reopened.capacity() / 4;
+            for (int i = 1; i <= 4; i++) {
+                reopened.store(42 + i * stride, move, 0, 1, 20);
+            }
+            assertEquals(0, reopened.probe(42));
+            // Within a run the shallowest entry goes.
+            reopened.store(42 + stride, move, 0, 9, 20);
+            reopened.store(42 + 5 * stride, move, 0, 5, 20);
+            assertNotEquals(0, reopened.probe(42 + stride));
+            assertNotEquals(0, reopened.probe(42 + 5 * stride));
+            assertEquals(2, countPresent(reopened, 42 + 2 * stride, 42 + 3 * stride, 42 + 4 * stride));
+            reopened.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private int countPresent(AnalysisCache cache, long... keys) {
+        int count = 0;
+        for (long key : keys) {
+            if (cache.probe(key) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void rejectsCorruptFiles() throws IOException {
+        Path file = Files.createTempFile("analysis", ".cache");
+        Files.delete(file);
+        try {
+            AnalysisCache cache = new AnalysisCache(file, 1);
+            cache.store(7, Move.encode(1, 18), 30, 8, 20);
+            cache.close();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {1}), AnalysisCache.headerSize + 1000);
+            }
+            try {
+                new AnalysisCache(file, 1);
+                fail();
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("corrupt"));
+            }
+            Files.write(file, new byte[] {1, 2, 3});
+            try {
+                new AnalysisCache(file, 1);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void concurrentStores() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("analysis", ".cache");
+        Files.delete(file);
+        try {
+            final AnalysisCache cache = new AnalysisCache(file, 1);
+            final int stride = cache.capacity() / 4;
+            List<Thread> threads = new ArrayList<Thread>();
+            final List<Throwable> failures = new ArrayList<Throwable>();
+            for (int t = 0; t < 4; t++) {
+                final int seed = t;
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        Random random = new Random(seed);
+                        try {
+                            for (int i = 0; i < 200000; i++) {
+                                // Few buckets, so that the threads keep overwriting each other's entries.
+                                long key = random.nextInt(16) * (long) stride + random.nextInt(4) + ((long) random.nextInt(8) << 40);
+                                int depth = (int) (key % 200);
+                                cache.store(key, Move.encode((int) (key & 63), 0), (int) key & 0x7FFF, depth, 3);
+                                long data = cache.probe(key);
+                                // Whatever another thread wrote, an entry read back always belongs to its key.
+                                if (data != 0) {
+                                    assertEquals(depth, AnalysisCache.depth(data));
+                                    assertEquals((int) key & 0x7FFF, AnalysisCache.score(data));
+                                }
+                            }
+                        } catch (Throwable e) {
+                            synchronized (failures) {
+                                failures.add(e);
+                            }
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(failures.toString(), failures.isEmpty());
+            cache.close();
+            new AnalysisCache(file, 1).close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void searchUsesCache() throws IOException {
+        Path file = Files.createTempFile("analysis", ".cache");
+        Files.delete(file);
+        try {
+            Board board = new Board("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3");
+            SearchEngine engine = new SearchEngine(1, 1);
+            AnalysisCache first = new AnalysisCache(file, 1);
+            engine.setAnalysisCache(first);
+            SearchResult searched = engine.search(board, SearchLimits.depth(4), null);
+            assertTrue(searched.nodes > 0);
+            SearchResult cached = engine.search(board, SearchLimits.depth(3), null);
+            assertEquals(0, cached.nodes);
+            assertEquals(searched.bestMove, cached.bestMove);
+            assertEquals(searched.score, cached.score);
+            assertEquals(4, cached.depth);
+            assertTrue(engine.search(board, SearchLimits.depth(5), null).nodes > 0);
+            engine.shutdown();
+            first.close();
+
+            // A new engine in a new run finds the results on disk, including mates.
+            Board mated = new Board("rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3");
+            SearchEngine other = new SearchEngine(1, 1);
+            AnalysisCache cache = new AnalysisCache(file, 1);
+            other.setAnalysisCache(cache);
+            assertEquals(5, other.search(board, SearchLimits.depth(5), null).depth);
+            assertEquals(0, other.search(board, SearchLimits.depth(5), null).nodes);
+            other.search(mated, SearchLimits.depth(2), null);
+            long data = cache.probe(mated.getKey());
+            assertEquals(0, AnalysisCache.legalMoves(data));
+            assertEquals(Move.none, AnalysisCache.move(data));
+            assertEquals(-SearchEngine.mateScore, AnalysisCache.score(data));
+
+            // Searches without a depth limit always search.
+            SearchLimits clock = new SearchLimits();
+            clock.whiteTime = clock.blackTime = 1000;
+            clock.movesToGo = 40;
+            assertTrue(other.search(board, clock, null).nodes > 0);
+            // Nor are positions the game has been in before answered from the cache.
+            Board repeated = new Board(board);
+            repeated.makeMove(Move.encode(21, 6));
+            repeated.makeMove(Move.encode(42, 57));
+            repeated.makeMove(Move.encode(6, 21));
+            repeated.makeMove(Move.encode(57, 42));
+            assertEquals(board.getKey(), repeated.getKey());
+            assertEquals(0, other.search(board, SearchLimits.depth(3), null).nodes);
+            assertTrue(other.search(repeated, SearchLimits.depth(3), null).nodes > 0);
+            // A result for another position with the same key is not played.
+            cache.store(board.getKey(), Move.encode(0, 63), 0, 20, 29);
+            assertTrue(other.search(board, SearchLimits.depth(3), null).nodes > 0);
+            other.shutdown();
+            cache.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchAnalysisTest {
+
+    private static final String start = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String mated = "rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3";
+    private static final String stalemate = "7k/5Q2/6K1/8/8/8/8/8 b - - 0 1";
+    private static final String mateInOne = "7k/8/6K1/8/8/8/8/1Q6 w - - 0 1";
+    private static final String check = "4k3/8/8/8/8/8/8/4K2R b - - 0 1";
+
+    @Test
+    public void labels() {
+        BatchAnalysis analysis = new BatchAnalysis(0, 2);
+        List<BatchAnalysis.Result> results = analysis.analyze(Arrays.asList(start, mated, stalemate, "not a fen", check));
+        assertEquals(5, results.size());
+        assertEquals(20, results.get(0).legalMoves);
+        assertEquals(GameState.Ongoing, results.get(0).state);
+        assertEquals(start + "\tOngoing\t20\t-", results.get(0).toString());
+        assertEquals(0, results.get(1).legalMoves);
+        assertTrue(results.get(1).inCheck);
+        assertEquals(GameState.BlackWin, results.get(1).state);
+        assertEquals(GameState.Stalemate, results.get(2).state);
+        assertFalse(results.get(2).inCheck);
+        assertNotNull(results.get(3).error);
+        assertTrue(results.get(3).toString().startsWith("not a fen\terror\t"));
+        assertFalse(results.get(4).inCheck);
+        assertEquals(Move.none, results.get(0).bestMove);
+        assertEquals(5, analysis.getPositions());
+        assertTrue(analysis.positionsPerSecond() > 0);
+        analysis.shutdown();
+    }
+
+    @Test
+    public void searchesInParallelInOrder() throws IOException {
+        BatchAnalysis analysis = new BatchAnalysis(2, 3);
+        // Many positions, so that every thread gets some; each must come back in its own place.
+        List<String> fens = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            fens.add(i % 3 == 0 ? mateInOne : i % 3 == 1 ? start : stalemate);
+        }
+        List<BatchAnalysis.Result> results = analysis.analyze(fens);
+        for (int i = 0; i < fens.size(); i++) {
+            BatchAnalysis.Result result = results.get(i);
+            assertEquals(fens.get(i), result.fen);
+            if (i % 3 == 0) {
+                assertEquals("b1b8", Move.toString(result.bestMove));
+                assertEquals(SearchEngine.mateScore - 1, result.score);
+                assertEquals(2, result.depth);
+            } else if (i % 3 == 1) {
+                // Transposition table entries left by earlier positions may change the move chosen, not the depth.
+                assertNotEquals(Move.none, result.bestMove);
+                assertEquals(2, result.depth);
+            } else {
+                assertEquals(Move.none, result.bestMove);
+                assertEquals(0, result.depth);
+            }
+        }
+        assertEquals(300, analysis.getPositions());
+        assertTrue(analysis.bytesPerPosition() != 0);
+
+        StringWriter out = new StringWriter();
+        analysis.analyze(new BufferedReader(new StringReader("# a comment\n" + mateInOne + "\n\n" + stalemate + "\n")), out);
+        assertEquals(mateInOne + "\tOngoing\t25\t-\tb1b8\t" + (SearchEngine.mateScore - 1) + "\n"
+                + stalemate + "\tStalemate\t0\t-\n", out.toString());
+        assertEquals(302, analysis.getPositions());
+        analysis.shutdown();
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.Random;
+
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -9,6 +11,8 @@ public class BoardTest {
         assertFalse(board.move(1, 0, 3, 1)); // knight cannot attack its own piece
         assertTrue(board.move(5, 1, 5, 2)); // pawn to f3
         assertFalse(board.move(0, 1, 0, 2)); // not white's turn
+        assertFalse(board.move(4, 6, 4, 8)); // off the board
+        assertFalse(board.move(-1, 6, 0, 5)); // off the board
         assertTrue(board.move(4, 6, 4, 4)); // pawn to e5
         assertTrue(board.move(6, 1, 6, 3)); // pawn to g4
         assertTrue(board.move(3, 7, 7, 3)); // queen to h4
@@ -42,6 +46,299 @@ public class BoardTest {
 
     @Test
     public void enPassant() {
+        Board board = new Board();
+        assertTrue(board.move(4, 1, 4, 3)); // pawn to e4
+        assertTrue(board.move(0, 6, 0, 5)); // pawn to a6
+        assertTrue(board.move(4, 3, 4, 4)); // pawn to e5
+        assertTrue(board.move(3, 6, 3, 4)); // pawn to d5
+        assertTrue(board.move(4, 4, 3, 5)); // pawn captures d5 en passant
+        assertTrue(board.boardAsString().startsWith(
+                "7|rnbqkbnr\n" +
+                "6|_pp_pppp\n" +
+                "5|p__P____\n" +
+                "4|________\n"));
+
+        board.reset();
+        assertTrue(board.move(4, 1, 4, 3)); // pawn to e4
+        assertTrue(board.move(0, 6, 0, 5)); // pawn to a6
+        assertTrue(board.move(4, 3, 4, 4)); // pawn to e5
+        assertTrue(board.move(5, 6, 5, 4)); // pawn to f5
+        assertTrue(board.move(7, 1, 7, 2)); // pawn to h3
+        assertTrue(board.move(0, 5, 0, 4)); // pawn to a5
+        assertFalse(board.move(4, 4, 5, 5)); // en passant is only possible immediately after the double move
+    }
+
+    @Test
+    public void pawnAttacks() {
+        Board board = new Board();
+        assertTrue(board.move(4, 1, 4, 3)); // pawn to e4
+        assertTrue(board.move(3, 6, 3, 4)); // pawn to d5
+        assertTrue(board.move(4, 0, 4, 1)); // king to e2
+        assertTrue(board.move(3, 4, 3, 3)); // pawn to d4
+        assertFalse(board.move(4, 1, 4, 2)); // e3 is attacked by the d4 pawn
+        assertTrue(board.move(4, 1, 3, 2)); // d3 is only in front of the pawn, so the king may go there
+    }
+
+    @Test
+    public void generateMoves() {
+        Board board = new Board();
+        int[] moves = new int[Board.maxMoves];
+        assertEquals(20, board.generateMoves(moves, true));
+        assertTrue(board.move(5, 1, 5, 2)); // pawn to f3
+        assertTrue(board.move(4, 6, 4, 4)); // pawn to e5
+        assertTrue(board.move(6, 1, 6, 3)); // pawn to g4
+        assertTrue(board.move(3, 7, 7, 3)); // queen to h4, checkmate
+        assertEquals(0, board.generateMoves(moves, true));
+        int pseudoLegal = board.generateMoves(moves, false);
+        assertTrue(pseudoLegal > 0);
+        for (int i = 0; i < pseudoLegal; i++) {
+            assertFalse(board.move(Move.from(moves[i]) % 8, Move.from(moves[i]) / 8, Move.to(moves[i]) % 8, Move.to(moves[i]) / 8));
+        }
+    }
+
+    @Test
+    public void makeAndUnmake() {
+        Board board = new Board();
+        String start = board.boardAsString();
+        int[][] moves = new int[3][Board.maxMoves];
+        // Make and unmake every sequence of three moves, which must always leave the start position.
+        int count = board.generateMoves(moves[0], false);
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[0][i]);
+            int replies = board.generateMoves(moves[1], false);
+            for (int j = 0; j < replies; j++) {
+                board.makeMove(moves[1][j]);
+                int answers = board.generateMoves(moves[2], false);
+                for (int k = 0; k < answers; k++) {
+                    board.makeMove(moves[2][k]);
+                    assertTrue(board.unmakeMove());
+                }
+                assertTrue(board.unmakeMove());
+            }
+            assertTrue(board.unmakeMove());
+        }
+        assertFalse(board.unmakeMove());
+        assertEquals(start, board.boardAsString());
+
+        // Castling, en passant and promotion are unmade exactly, including the rights they change.
+        String[] game = {"e2e4", "d7d5", "e4e5", "f7f5", "e5f6", "g8h6", "f6g7", "b8c6", "g1f3", "c8e6", "f1e2", "d8d6", "e1g1", "e8c8", "g7h8q"};
+        String[] positions = new String[game.length + 1];
+        positions[0] = board.boardAsString();
+        for (int i = 0; i < game.length; i++) {
+            int move = findMove(board, game[i]);
+            assertTrue(game[i], move != Move.none);
+            board.makeMove(move);
+            positions[i + 1] = board.boardAsString();
+        }
+        int legalMoves = board.generateMoves(moves[0], true);
+        for (int i = game.length; i > 0; i--) {
+            assertEquals(positions[i], board.boardAsString());
+            assertTrue(board.unmakeMove());
+        }
+        assertEquals(positions[0], board.boardAsString());
+        for (String move : game) {
+            board.makeMove(findMove(board, move));
+        }
+        assertEquals(legalMoves, board.generateMoves(moves[0], true));
+    }
+
+    @Test
+    public void zobristKey() {
+        Board board = new Board();
+        long start = board.getKey();
+        // Knights out and back again reach the start position by a different route.
+        for (String move : new String[] {"g1f3", "g8f6", "f3g1"}) {
+            board.makeMove(findMove(board, move));
+            assertNotEquals(start, board.getKey());
+        }
+        board.makeMove(findMove(board, "f6g8"));
+        assertEquals(start, board.getKey());
+        // Moving the king and back loses the castling rights, so the position is different.
+        for (String move : new String[] {"e2e4", "e7e5", "e1e2", "e8e7", "e2e1", "e7e8"}) {
+            board.makeMove(findMove(board, move));
+        }
+        long withoutCastling = board.getKey();
+        board.reset();
+        for (String move : new String[] {"e2e4", "e7e5"}) {
+            board.makeMove(findMove(board, move));
+        }
+        assertNotEquals(withoutCastling, board.getKey());
+        for (int i = 0; i < 2; i++) {
+            board.unmakeMove();
+        }
+        assertEquals(start, board.getKey());
+    }
+
+    @Test
+    public void hasLegalMove() {
+        // Walk the game tree a few plies deep, comparing the shortcut with generating every legal move.
+        Board board = new Board();
+        for (String move : new String[] {"e2e4", "d7d5", "e4d5", "d8d5", "b1c3", "d5a5", "d2d4", "c7c6"}) {
+            board.makeMove(findMove(board, move));
+        }
+        checkHasLegalMove(board, 3);
+        // Stalemate: Black's king on a8 has no moves and is not in check.
+        board = new Board();
+        for (String move : new String[] {"e2e3", "a7a5", "d1h5", "a8a6", "h5a5", "h7h5", "h2h4", "a6h6", "a5c7",
+                "f7f6", "c7d7", "e8f7", "d7b7", "d8d3", "b7b8", "d3h7", "b8c8", "f7g6", "c8e6"}) {
+            int encoded = findMove(board, move);
+            assertTrue(move, board.move(Move.from(encoded) % 8, Move.from(encoded) / 8, Move.to(encoded) % 8, Move.to(encoded) / 8));
+        }
+        assertFalse(board.hasLegalMove());
+        assertFalse(board.isInCheck());
+        assertEquals(GameState.Stalemate, board.getState());
+    }
+
+    @Test
+    public void drawsByRule() {
+        Board board = new Board();
+        String[] shuffle = {"g1f3", "g8f6", "f3g1", "f6g8"};
+        for (int i = 0; i < 8; i++) {
+            assertEquals(GameState.Ongoing, board.getState());
+            assertEquals(i < 4 ? 0 : 1, board.repetitions());
+            int move = findMove(board, shuffle[i % 4]);
+            assertTrue(board.move(Move.from(move), Move.to(move), null));
+        }
+        assertEquals(2, board.repetitions());
+        assertEquals(GameState.ThreefoldRepetition, board.getState());
+        assertTrue(board.getState().isDraw());
+        // A copy keeps the history, so a search on it sees the repetition; unmaking a move forgets it.
+        assertEquals(2, new Board(board).repetitions());
+        board.unmakeMove();
+        assertEquals(1, board.repetitions());
+        // A pawn move makes every earlier position unrepeatable.
+        board.makeMove(findMove(board, "e7e5"));
+        assertEquals(0, board.repetitions());
+
+        board = new Board("4k3/8/8/8/8/8/8/4K2R w - - 99 80");
+        assertEquals(GameState.Ongoing, board.getState());
+        assertTrue(board.move(7, 15, null));
+        assertEquals(GameState.FiftyMoveRule, board.getState());
+        assertEquals(GameState.FiftyMoveRule, new Board("4k3/8/8/8/8/8/8/4K2R b - - 100 80").getState());
+        // Checkmate on the hundredth halfmove still wins.
+        board = new Board("k7/8/1K6/8/8/8/8/7R w - - 99 80");
+        assertTrue(board.move(7, 63, null));
+        assertEquals(GameState.WhiteWin, board.getState());
+    }
+
+    @Test
+    public void isLegal() {
+        // Play random games, comparing the legality test with making each pseudo-legal move.
+        Random random = new Random(1);
+        int[] moves = new int[Board.maxMoves];
+        for (int game = 0; game < 200; game++) {
+            Board board = new Board();
+            for (int ply = 0; ply < 200; ply++) {
+                Color player = board.getCurrentPlayer();
+                int count = board.generateMoves(moves, false);
+                int legalCount = 0;
+                for (int i = 0; i < count; i++) {
+                    board.makeMove(moves[i]);
+                    boolean safe = !board.isAttackedBy(board.getCurrentPlayer(), board.getKingSquare(player));
+                    board.unmakeMove();
+                    assertEquals(Move.toString(moves[i]), safe, board.isLegal(moves[i]));
+                    if (safe) {
+                        moves[legalCount++] = moves[i];
+                    }
+                }
+                // Any encoding at all, as from a cache entry for another position, is accepted only if legal.
+                int any = random.nextInt(1 << 15);
+                boolean listed = false;
+                for (int i = 0; i < legalCount; i++) {
+                    assertTrue(board.isLegalMove(moves[i]));
+                    listed |= moves[i] == any;
+                }
+                assertEquals("move " + any, listed, board.isLegalMove(any));
+                if (legalCount == 0) {
+                    break;
+                }
+                board.makeMove(moves[random.nextInt(legalCount)]);
+            }
+        }
+    }
+
+    @Test
+    public void fen() {
+        Board board = new Board();
+        assertEquals("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", board.toFen());
+        board.makeMove(findMove(board, "e2e4"));
+        board.makeMove(findMove(board, "g8f6"));
+        board.makeMove(findMove(board, "e4e5"));
+        board.makeMove(findMove(board, "d7d5"));
+        String fen = "rnbqkb1r/ppp1pppp/5n2/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 3";
+        assertEquals(fen, board.toFen());
+        Board copy = new Board(fen);
+        assertEquals(board.getKey(), copy.getKey());
+        assertEquals(board.getPawnKey(), copy.getPawnKey());
+        assertEquals(board.getMidgameScore(), copy.getMidgameScore());
+        assertEquals(fen, copy.toFen());
+        // The en passant square is dropped when no pawn can capture there, as makeMove() does.
+        assertEquals("4k3/8/8/8/4P3/8/8/4K3 b - - 0 1", new Board("4k3/8/8/8/4P3/8/8/4K3 b - e3 0 1").toFen());
+        // A position can be checkmate from the start.
+        assertEquals(GameState.BlackWin, new Board("rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3").getState());
+        for (String bad : new String[] {"", "8/8/8/8/8/8/8/8 w - - 0 1", "4k3/8/8/8/8/8/8/4K3 x - - 0 1",
+                "4k3/8/8/8/8/8/8/4K3 w - - zero 1", "4k3/8/8/8/8/8/8/4QK2 w - -", "4k3/8/9/8/8/8/8/4K3 w - -"}) {
+            try {
+                new Board(bad);
+                fail("Accepted \"" + bad + "\"");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void snapshot() {
+        Board board = new Board("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        board.makeMove(findMove(board, "a2a4"));
+        Snapshot snapshot = board.snapshot();
+        assertEquals(board.toFen(), snapshot.toString());
+        assertEquals(snapshot, board.snapshot());
+        assertEquals(snapshot.hashCode(), board.snapshot().hashCode());
+        Board restored = snapshot.toBoard();
+        assertEquals(board.getKey(), restored.getKey());
+        assertEquals(board.getEnPassantSquare(), restored.getEnPassantSquare());
+        assertEquals(snapshot, restored.snapshot());
+        board.unmakeMove();
+        assertNotEquals(snapshot, board.snapshot());
+    }
+
+    @Test
+    public void squareIndices() {
+        assertSame(Position.of(4, 3), Position.of(28));
+        assertEquals(28, Position.of(4, 3).square());
+        assertEquals("e4", Position.of(28).toString());
+        for (int square : new int[] {-1, 64}) {
+            try {
+                Position.of(square);
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().startsWith("Off the board"));
+            }
+        }
+        Board board = new Board("4k3/1P6/8/8/8/8/8/4K3 w - - 0 1");
+        assertFalse(board.move(49, 57, Piece.King));
+        assertFalse(board.move(49, 64, Piece.Queen));
+        assertTrue(board.move(49, 57, Piece.Rook));
+        assertEquals(Piece.Rook, board.pieceAt(57));
+        assertEquals(Color.Black, board.getCurrentPlayer());
+    }
+
+    private void checkHasLegalMove(Board board, int depth) {
+        int[] moves = new int[Board.maxMoves];
+        int count = board.generateMoves(moves, true);
+        assertEquals(count > 0, board.hasLegalMove());
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            checkHasLegalMove(board, depth - 1);
+            board.unmakeMove();
+        }
+    }
 
+    private int findMove(Board board, String algebraic) {
+        return board.findMove(algebraic, new int[Board.maxMoves]);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EvaluationTest {
+    @Test
+    public void symmetricPositionsAreEqual() {
+        Board board = new Board();
+        Evaluation evaluation = new Evaluation();
+        assertEquals(0, evaluation.evaluate(board));
+        assertTrue(board.move(4, 1, 4, 3)); // pawn to e4
+        assertTrue(evaluation.evaluate(board) < 0); // scored for Black, whose opponent has the better placed pawn
+        assertTrue(board.move(4, 6, 4, 4)); // pawn to e5
+        assertEquals(0, evaluation.evaluate(board));
+    }
+
+    @Test
+    public void incrementalMatchesFromScratch() {
+        Board board = new Board();
+        Evaluation evaluation = new Evaluation();
+        int[] moves = new int[Board.maxMoves];
+        // Play a long game choosing moves by a fixed rule, checking the sums after every move and every unmake.
+        for (int ply = 0; ply < 200 && board.generateMoves(moves, true) > 0; ply++) {
+            int count = board.generateMoves(moves, true);
+            int move = moves[(ply * 7 + 3) % count];
+            for (int i = 0; i < count; i++) {
+                board.makeMove(moves[i]);
+                assertEquals(Evaluation.evaluateFromScratch(board), evaluation.evaluate(board));
+                board.unmakeMove();
+            }
+            assertEquals(Evaluation.evaluateFromScratch(board), evaluation.evaluate(board));
+            board.makeMove(move);
+        }
+    }
+}
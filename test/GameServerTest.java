@@ -0,0 +1,79 @@
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class GameServerTest {
+    @Test
+    public void playOverSocket() throws IOException {
+        GameServer server = new GameServer(0);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            out.println("new");
+            String id = in.readLine().substring("ok ".length());
+            out.println("new");
+            String other = in.readLine().substring("ok ".length());
+            assertNotEquals(id, other);
+            assertEquals(2, server.getGameCount());
+            for (String move : new String[] {"f2f3", "e7e5", "g2g4"}) {
+                out.println("move " + id + " " + move);
+                assertTrue(in.readLine().startsWith("ok Ongoing "));
+            }
+            out.println("move " + id + " e1e2");
+            assertEquals("illegal", in.readLine());
+            out.println("move " + id + " d8h4");
+            assertEquals("ok BlackWin rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3", in.readLine());
+            out.println("move " + id + " a2a3");
+            assertTrue(in.readLine().startsWith("error "));
+            // The other game is unaffected.
+            out.println("show " + other);
+            assertEquals("ok Ongoing rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", in.readLine());
+            out.println("close " + other);
+            assertEquals("ok", in.readLine());
+            out.println("show " + other);
+            assertTrue(in.readLine().startsWith("error "));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void promotion() throws IOException {
+        GameServer server = new GameServer(0);
+        try {
+            String id = server.handle("new 4k3/1P6/8/8/8/8/8/4K3 w - - 0 1").substring("ok ".length());
+            assertTrue(server.handle("move " + id + " b7b8").startsWith("error "));
+            assertEquals("ok Ongoing 1N2k3/8/8/8/8/8/8/4K3 b - - 0 1", server.handle("move " + id + " b7b8n"));
+            assertTrue(server.handle("new 8/8/8/8/8/8/8/8 w - -").startsWith("error "));
+            assertTrue(server.handle("move 999 e2e4").startsWith("error "));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void repetitionAcrossRequests() throws IOException {
+        GameServer server = new GameServer(0);
+        try {
+            String id = server.handle("new").substring("ok ".length());
+            String[] moves = {"g1f3", "g8f6", "f3g1", "f6g8"};
+            for (int i = 0; i < 7; i++) {
+                assertTrue(server.handle("move " + id + " " + moves[i % 4]).startsWith("ok Ongoing "));
+            }
+            // The start position comes back for the third time.
+            assertTrue(server.handle("move " + id + " " + moves[3]).startsWith("ok ThreefoldRepetition "));
+            assertTrue(server.handle("show " + id).startsWith("ok ThreefoldRepetition "));
+            assertTrue(server.handle("move " + id + " e2e4").startsWith("error "));
+        } finally {
+            server.close();
+        }
+    }
+}
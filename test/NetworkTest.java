@@ -0,0 +1,127 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NetworkTest {
+
+    @Test
+    public void incrementalMatchesRecompute() {
+        Network network = Network.random(new Random(3), 64);
+        Random random = new Random(4);
+        Board board = new Board();
+        board.setNetwork(network);
+        int[] moves = new int[Board.maxMoves];
+        for (int game = 0; game < 20; game++) {
+            board.reset();
+            int made = 0;
+            // Random games, with captures, promotions, castling and en passant along the way, then taken back.
+            for (int ply = 0; ply < 120; ply++) {
+                int count = board.generateMoves(moves, true);
+                if (count == 0) {
+                    break;
+                }
+                board.makeMove(moves[random.nextInt(count)]);
+                made++;
+                assertEquals(board.toFen(), scratch(network, board), network.evaluate(board));
+            }
+            Board copy = new Board(board);
+            assertEquals(network.evaluate(board), network.evaluate(copy));
+            while (made-- > 0) {
+                board.unmakeMove();
+            }
+            assertEquals(scratch(network, board), network.evaluate(board));
+            assertEquals(scratch(network, copy), network.evaluate(copy));
+        }
+        board.setFen("4k3/8/8/8/8/8/8/4K2R w K - 0 1");
+        assertEquals(scratch(network, board), network.evaluate(board));
+    }
+
+    /**
+     * @return the network's evaluation with the accumulators recomputed
+     */
+    private int scratch(Network network, Board board) {
+        Board fresh = new Board(board.toFen());
+        fresh.setNetwork(network);
+        return network.evaluate(fresh);
+    }
+
+    @Test
+    public void symmetric() {
+        // Each side sees its own pieces the same way, so a mirrored position scores the same for the side to move.
+        Network network = Network.random(new Random(5), 32);
+        Board board = new Board("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3");
+        Board mirrored = new Board("rnbqkb1r/pppp1ppp/5n2/4p3/4P3/2N5/PPPP1PPP/R1BQKBNR b KQkq - 2 3");
+        board.setNetwork(network);
+        mirrored.setNetwork(network);
+        assertEquals(network.evaluate(board), network.evaluate(mirrored));
+    }
+
+    @Test
+    public void kernelsAgree() {
+        // Whichever kernels are in use must match the plain loops, including a size that leaves a tail.
+        Random random = new Random(6);
+        NnueKernels scalar = new NnueKernels();
+        for (int size : new int[] {8, 100, 256}) {
+            short[] sums = new short[size];
+            short[] weights = new short[3 * size];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = (short) (random.nextInt(601) - 300);
+            }
+            short[] expected = sums.clone();
+            NnueKernels.instance.add(sums, weights, size);
+            NnueKernels.instance.subtract(sums, weights, 2 * size);
+            scalar.add(expected, weights, size);
+            scalar.subtract(expected, weights, 2 * size);
+            assertTrue(Arrays.equals(expected, sums));
+            short[] outputWeights = new short[size];
+            for (int i = 0; i < size; i++) {
+                outputWeights[i] = (short) (random.nextInt(255) - 127);
+            }
+            assertEquals(scalar.forward(sums, outputWeights, 0), NnueKernels.instance.forward(sums, outputWeights, 0));
+        }
+    }
+
+    @Test
+    public void files() throws IOException {
+        Network network = Network.random(new Random(7), 48);
+        Path file = Files.createTempFile("network", ".nnue");
+        try {
+            network.write(file);
+            Network read = Network.load(file);
+            Board board = new Board();
+            board.setNetwork(network);
+            Board other = new Board();
+            other.setNetwork(read);
+            assertEquals(network.evaluate(board), read.evaluate(other));
+            Files.write(file, new byte[] {1, 2, 3});
+            try {
+                Network.load(file);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void searchWithNetwork() {
+        SearchEngine engine = new SearchEngine(2, 1);
+        engine.setNetwork(Network.random(new Random(8), 32));
+        // Mate is found whatever the evaluation.
+        Board board = new Board("rnbqkbnr/pppp1ppp/8/4p3/6P1/5P2/PPPPP2P/RNBQKBNR b KQkq - 0 2");
+        SearchResult result = engine.search(board, SearchLimits.depth(3), null);
+        assertEquals("d8h4", Move.toString(result.bestMove));
+        assertNull(board.getAccumulator());
+        engine.setNetwork(null);
+        assertEquals("d8h4", Move.toString(engine.search(board, SearchLimits.depth(3), null).bestMove));
+        engine.shutdown();
+    }
+}
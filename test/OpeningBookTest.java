@@ -0,0 +1,87 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OpeningBookTest {
+    @Test
+    public void buildAndProbe() throws IOException {
+        OpeningBookBuilder builder = new OpeningBookBuilder(4);
+        builder.addLine(3, "e2e4", "e7e5", "g1f3", "b8c6", "f1b5");
+        builder.addLine(1, "d2d4", "d7d5");
+        builder.addLine(2, "e2e4", "c7c5");
+        try {
+            builder.addLine(1, "e2e5");
+            fail("Accepted an illegal move");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(7, builder.size()); // the fifth ply of the first line is beyond the book's depth
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            builder.write(file);
+            OpeningBook book = new OpeningBook(file);
+            assertEquals(7, book.size());
+            Board board = new Board();
+            int[] moves = new int[Board.maxMoves];
+            int[] weights = new int[Board.maxMoves];
+            assertEquals(2, book.getMoves(board, moves, weights));
+            assertEquals("e2e4", Move.toString(moves[0]));
+            assertEquals(5, weights[0]);
+            assertEquals("d2d4", Move.toString(moves[1]));
+            assertEquals(1, weights[1]);
+            assertEquals(moves[0], book.bestMove(board, new int[Board.maxMoves]));
+            assertTrue(book.contains(board, moves[1]));
+            board.makeMove(moves[0]);
+            assertEquals(2, book.getMoves(board, moves, weights));
+            assertEquals("e7e5", Move.toString(moves[0]));
+            int picked = book.pickMove(board, new Random(1), new int[Board.maxMoves], new int[Board.maxMoves]);
+            assertTrue(picked == moves[0] || picked == moves[1]);
+            board.makeMove(moves[1]); // c7c5
+            assertEquals(Move.none, book.bestMove(board, moves));
+            // The engine plays from the book without searching.
+            SearchEngine engine = new SearchEngine(1, 1);
+            engine.setBook(book);
+            SearchResult result = engine.search(new Board(), SearchLimits.depth(5), null);
+            assertEquals(0, result.depth);
+            assertTrue(book.contains(new Board(), result.bestMove));
+            engine.shutdown();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void buildFromPgn() throws IOException {
+        Path pgn = Files.createTempFile("games", ".pgn");
+        try {
+            Files.write(pgn, ("[Event \"a\"]\n\n1. e4 e5 2. Nf3 Nc6 1-0\n\n"
+                    + "[Event \"b\"]\n\n1. e4 c5 0-1\n\n"
+                    + "[Event \"c\"]\n\n1. e4 e5 2. Ke3 *\n").getBytes(StandardCharsets.US_ASCII));
+            OpeningBookBuilder builder = new OpeningBookBuilder(10);
+            assertEquals(1, builder.addPgn(pgn, 2).invalidGames());
+            Path file = Files.createTempFile("book", ".bin");
+            try {
+                builder.write(file);
+                OpeningBook book = new OpeningBook(file);
+                Board board = new Board();
+                int[] moves = new int[Board.maxMoves];
+                int[] weights = new int[Board.maxMoves];
+                assertEquals(1, book.getMoves(board, moves, weights));
+                assertEquals(2 + 0, weights[0]); // won once, lost once
+                board.makeMove(moves[0]);
+                assertEquals(2, book.getMoves(board, moves, weights));
+                assertEquals("c7c5", Move.toString(moves[0])); // the winning reply comes first
+            } finally {
+                Files.delete(file);
+            }
+        } finally {
+            Files.delete(pgn);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PerftTest {
+    // Published node counts from the start position, by depth.
+    private static final long[] startPosition = {1, 20, 400, 8902, 197281, 4865609};
+
+    @Test
+    public void startPosition() {
+        Board board = new Board();
+        String before = board.boardAsString();
+        for (int depth = 0; depth <= 4; depth++) {
+            assertEquals(startPosition[depth], Perft.perft(board, depth));
+        }
+        assertEquals(before, board.boardAsString());
+    }
+
+    @Test
+    public void parallelStartPosition() {
+        ForkJoinPool pool = new ForkJoinPool();
+        assertEquals(startPosition[5], Perft.parallelPerft(new Board(), 5, pool));
+        pool.shutdown();
+    }
+
+    @Test
+    public void divide() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Map<String, Long> results = Perft.divide(new Board(), 3, pool);
+        pool.shutdown();
+        assertEquals(20, results.size());
+        assertEquals(Long.valueOf(600), results.get("e2e4"));
+        assertEquals(Long.valueOf(440), results.get("g1f3"));
+        long total = 0;
+        for (long nodes : results.values()) {
+            total += nodes;
+        }
+        assertEquals(startPosition[3], total);
+    }
+
+    @Test
+    public void kiwipete() {
+        // Castling through and out of check, pins, en passant and promotions all at once.
+        checkPosition("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 48, 2039, 97862);
+    }
+
+    @Test
+    public void rookEndgame() {
+        // En passant captures that would expose the king along the rank.
+        checkPosition("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 14, 191, 2812, 43238);
+    }
+
+    @Test
+    public void promotions() {
+        checkPosition("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 6, 264, 9467);
+        checkPosition("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 44, 1486, 62379);
+    }
+
+    private void checkPosition(String fen, long... counts) {
+        Board board = new Board(fen);
+        for (int depth = 1; depth <= counts.length; depth++) {
+            assertEquals(fen + " depth " + depth, counts[depth - 1], Perft.perft(board, depth));
+        }
+        assertEquals(fen, board.toFen());
+    }
+}
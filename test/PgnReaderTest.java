@@ -0,0 +1,54 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class PgnReaderTest {
+    private static final String games =
+            "[Event \"Scholar's mate\"]\n[White \"A\"]\n[Black \"B [C]\"]\n[Result \"1-0\"]\n\n"
+            + "1. e4 e5 2. Bc4 {threatening f7} Nc6 (2... Nf6 3. d3) 3. Qh5 Nf6?? $4 4. Qxf7# 1-0\n\n"
+            + "[Event \"Castling\"]\n[Result \"1/2-1/2\"]\n\n"
+            + "1.e4 e5 2.Nf3 Nc6 3.Bc4 Bc5 4.O-O Nf6 5.d3 O-O 1/2-1/2\n\n"
+            + "[Event \"Illegal\"]\n[Result \"*\"]\n\n"
+            + "1. e4 e5 2. Ke3 Nc6 *\n\n"
+            + "[Event \"Set up\"]\n[SetUp \"1\"]\n[FEN \"4k3/8/8/8/8/8/8/4K2R w K - 0 1\"]\n[Result \"1-0\"]\n\n"
+            + "1. O-O Kd7 2. Rf7+ 1-0\n\n"
+            + "[Event \"En passant and promotion\"]\n[Result \"0-1\"]\n\n"
+            + "1. e4 d5 2. e5 f5 3. exf6 Nc6 4. fxg7 Nf6\n5. gxh8=Q 0-1\n";
+
+    @Test
+    public void validate() throws IOException {
+        Path file = Files.createTempFile("games", ".pgn");
+        try {
+            Files.write(file, games.getBytes(StandardCharsets.US_ASCII));
+            PgnReport report = PgnReader.validate(file, 1);
+            checkReport(report);
+            // Tiny chunks put every game in a chunk of its own; the totals must not change.
+            checkReport(PgnReader.validate(file, 3, 16));
+            // More chunks than are read at once by one thread.
+            checkReport(PgnReader.validate(file, 1, 16));
+            // Without Event tags, games are told apart by the blank line before their tags.
+            Files.write(file, games.replaceAll("\\[Event [^\\n]*\\n", "").replace("\n", "\r\n").getBytes(StandardCharsets.US_ASCII));
+            checkReport(PgnReader.validate(file, 3, 16));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private void checkReport(PgnReport report) {
+        assertEquals(5, report.games);
+        assertEquals(4, report.validGames);
+        assertEquals(1, report.invalidGames());
+        assertEquals(7 + 10 + 2 + 3 + 9, report.moves);
+        assertEquals(2, report.whiteWins);
+        assertEquals(1, report.blackWins);
+        assertEquals(1, report.draws);
+        assertEquals(1, report.unfinished);
+        assertEquals(1, report.errors.size());
+        assertTrue(report.errors.get(0), report.errors.get(0).endsWith("ply 3: cannot play Ke3"));
+    }
+}
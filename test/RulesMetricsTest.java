@@ -0,0 +1,108 @@
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.Assert.*;
+
+public class RulesMetricsTest {
+    @Test
+    public void countersAndMBean() throws Exception {
+        RulesMetrics metrics = RulesMetrics.get();
+        metrics.setEnabled(true);
+        try {
+            metrics.reset();
+            playFoolsMate();
+            assertEquals(4, metrics.getMoves());
+            assertEquals(1, metrics.getIllegalMoves());
+            assertEquals(1, metrics.getGamesEnded());
+            assertTrue(metrics.getMoveRangeChecks() >= 4);
+            assertTrue(metrics.getLegalityChecks() >= 4);
+            assertTrue(metrics.getAttackChecks() > 0);
+            long histogramTotal = 0;
+            for (long count : metrics.getMoveLatencyHistogram()) {
+                histogramTotal += count;
+            }
+            assertEquals(5, histogramTotal);
+            assertTrue(metrics.getMoveLatencyP50Nanos() <= metrics.getMoveLatencyP99Nanos());
+            assertTrue(metrics.getMoveLatencyMaxNanos() > 0);
+            assertTrue(metrics.getSlowestMove(), metrics.getSlowestMove().matches("[a-h][1-8][a-h][1-8] (in|to reach) .* ns\\)"));
+            assertTrue(metrics.getMovesPerSecond() > 0);
+
+            RulesMetrics.register();
+            RulesMetrics.register(); // registering twice is harmless
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(RulesMetrics.objectName);
+            assertEquals(4L, server.getAttribute(name, "Moves"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Moves"));
+        } finally {
+            metrics.setEnabled(false);
+        }
+        // Nothing is counted while the metrics are off.
+        playFoolsMate();
+        assertEquals(0, metrics.getMoves());
+        assertEquals(0, metrics.getAttackChecks());
+    }
+
+    @Test
+    public void flightRecorderEvents() throws Exception {
+        Path file = Files.createTempFile("chess", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable("chess.Move");
+                recording.enable("chess.GameEnd");
+                recording.enable("chess.SearchIteration");
+                recording.start();
+                playFoolsMate();
+                SearchEngine engine = new SearchEngine(1, 1);
+                engine.search(new Board(), SearchLimits.depth(3), null);
+                engine.shutdown();
+                recording.stop();
+                recording.dump(file);
+            }
+            List<String> names = new ArrayList<String>();
+            String result = null;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                names.add(event.getEventType().getName());
+                if (event.getEventType().getName().equals("chess.GameEnd")) {
+                    result = event.getString("result");
+                }
+            }
+            assertEquals(5, count(names, "chess.Move"));
+            assertEquals(1, count(names, "chess.GameEnd"));
+            assertEquals("BlackWin", result);
+            assertEquals(3, count(names, "chess.SearchIteration"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static int count(List<String> names, String name) {
+        int count = 0;
+        for (String each : names) {
+            if (each.equals(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void playFoolsMate() {
+        Board board = new Board();
+        assertTrue(board.move(13, 21, null)); // f3
+        assertFalse(board.move(13, 29, null)); // not White's turn
+        assertTrue(board.move(52, 36, null)); // e5
+        assertTrue(board.move(14, 30, null)); // g4
+        assertTrue(board.move(59, 31, null)); // Qh4#
+        assertEquals(GameState.BlackWin, board.getState());
+    }
+}
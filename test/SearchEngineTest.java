@@ -0,0 +1,97 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SearchEngineTest {
+    @Test
+    public void findsMateInOne() {
+        Board board = new Board();
+        assertTrue(board.move(5, 1, 5, 2)); // pawn to f3
+        assertTrue(board.move(4, 6, 4, 4)); // pawn to e5
+        assertTrue(board.move(6, 1, 6, 3)); // pawn to g4
+        SearchEngine engine = new SearchEngine(1, 1);
+        SearchResult result = engine.search(board, SearchLimits.depth(3), null);
+        assertEquals("d8h4", Move.toString(result.bestMove));
+        assertTrue(result.isMateScore());
+        assertEquals(1, result.mateIn());
+        engine.shutdown();
+    }
+
+    @Test
+    public void winsMaterial() {
+        Board board = new Board();
+        assertTrue(board.move(4, 1, 4, 3)); // pawn to e4
+        assertTrue(board.move(3, 6, 3, 4)); // pawn to d5
+        SearchEngine engine = new SearchEngine(2, 1);
+        SearchResult result = engine.search(board, SearchLimits.depth(4), null);
+        assertEquals("e4d5", Move.toString(result.bestMove));
+        engine.shutdown();
+    }
+
+    @Test
+    public void respectsMoveTime() {
+        SearchEngine engine = new SearchEngine(2, 16);
+        final int[] iterations = new int[1];
+        long start = System.currentTimeMillis();
+        SearchResult result = engine.search(new Board(), SearchLimits.moveTime(200), new SearchListener() {
+            public void iterationComplete(SearchResult result) {
+                iterations[0]++;
+            }
+        });
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("took " + elapsed + " ms", elapsed < 300);
+        assertTrue(result.bestMove != Move.none);
+        assertTrue(iterations[0] > 0);
+        assertEquals(result.bestMove, result.pv[0]);
+        engine.shutdown();
+    }
+
+    @Test
+    public void stopFromAnotherThread() throws InterruptedException {
+        final SearchEngine engine = new SearchEngine(1, 16);
+        SearchLimits limits = new SearchLimits();
+        limits.infinite = true;
+        Thread stopper = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                engine.stop();
+            }
+        });
+        long start = System.currentTimeMillis();
+        stopper.start();
+        SearchResult result = engine.search(new Board(), limits, null);
+        stopper.join();
+        assertTrue(System.currentTimeMillis() - start < 200);
+        assertTrue(result.bestMove != Move.none);
+        engine.shutdown();
+    }
+
+    @Test
+    public void ponderHitRestartsTheClock() throws InterruptedException {
+        final SearchEngine engine = new SearchEngine(1, 16);
+        SearchLimits limits = new SearchLimits();
+        limits.infinite = true;
+        limits.moveTime = 150;
+        Thread ponderHit = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                engine.stopWhenLimitsReached();
+            }
+        });
+        long start = System.currentTimeMillis();
+        ponderHit.start();
+        engine.search(new Board(), limits, null);
+        ponderHit.join();
+        // The move time counts from the ponder hit, not from the start of pondering.
+        assertTrue(System.currentTimeMillis() - start >= 400);
+        engine.shutdown();
+    }
+}
@@ -0,0 +1,163 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TablebaseTest {
+    private static Tablebase tablebase;
+
+    /**
+     * KPvK and the tables it needs (KQvK, KRvK, KBvK, KNvK), generated once for all tests.
+     */
+    private static synchronized Tablebase tablebase() throws IOException {
+        if (tablebase == null) {
+            tablebase = new Tablebase();
+            tablebase.generate("KvKP", 2);
+        }
+        return tablebase;
+    }
+
+    @Test
+    public void longestMates() throws IOException {
+        Tablebase tablebase = tablebase();
+        assertTrue(tablebase.contains("KQvK") && tablebase.contains("KvKR") && tablebase.contains("KPvK"));
+        assertFalse(tablebase.contains("KBNvK"));
+        // The well-known longest mates with the stronger side to move.
+        assertEquals(10, longestWin(tablebase.getTable("KQvK")));
+        assertEquals(16, longestWin(tablebase.getTable("KRvK")));
+        assertEquals(0, longestWin(tablebase.getTable("KBvK")));
+        assertEquals(0, longestWin(tablebase.getTable("KNvK")));
+    }
+
+    private int longestWin(EndgameTable table) {
+        int longest = 0;
+        for (int index = 0; index < table.size; index++) {
+            int code = table.code(index);
+            assertTrue(code != EndgameTable.unresolved);
+            if (EndgameTable.isWin(code)) {
+                longest = Math.max(longest, EndgameTable.moves(code));
+            }
+        }
+        return longest;
+    }
+
+    @Test
+    public void knownPositions() throws IOException {
+        Tablebase tablebase = tablebase();
+        assertEquals(SearchEngine.mateScore - 1, tablebase.probe(new Board("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1")));
+        assertEquals(-SearchEngine.mateScore, tablebase.probe(new Board("Q6k/8/6K1/8/8/8/8/8 b - - 0 1")));
+        assertEquals(0, tablebase.probe(new Board("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1"))); // stalemate
+        // A king on the sixth rank in front of its pawn wins, whoever moves; a rook pawn with the defender
+        // in the corner does not.
+        assertTrue(tablebase.probe(new Board("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1")) > 0);
+        assertTrue(tablebase.probe(new Board("4k3/8/4K3/4P3/8/8/8/8 b - - 0 1")) < 0);
+        assertTrue(tablebase.probe(new Board("8/8/8/8/4p3/4k3/8/4K3 b - - 0 1")) > 0);
+        assertEquals(0, tablebase.probe(new Board("k7/8/K7/P7/8/8/8/8 w - - 0 1")));
+        assertEquals(0, tablebase.probe(new Board("8/8/8/8/p7/k7/8/K7 b - - 0 1")));
+        assertEquals(0, tablebase.probe(new Board("4k3/8/8/8/8/8/8/4K3 w - - 0 1")));
+        assertEquals(Tablebase.unknown, tablebase.probe(new Board("4k3/8/8/8/8/8/8/R3K3 w Q - 0 1")));
+        assertEquals(Tablebase.unknown, tablebase.probe(new Board("4k3/8/8/8/8/8/8/2B1KN2 w - - 0 1")));
+        assertEquals(Tablebase.unknown, tablebase.probe(new Board()));
+    }
+
+    @Test
+    public void scoresAgreeWithMoves() throws IOException {
+        // Every position's score must follow from its moves' scores: the best of them, a ply further from mate.
+        Tablebase tablebase = tablebase();
+        Random random = new Random(16);
+        String[] pieces = {"Q", "R", "P", "B"};
+        int checked = 0;
+        while (checked < 2000) {
+            Board board = randomPosition(random, pieces[checked % pieces.length], random.nextBoolean());
+            if (board == null) {
+                continue;
+            }
+            checked++;
+            int[] moves = new int[Board.maxMoves];
+            int count = board.generateMoves(moves, true);
+            int expected = count == 0 && board.isInCheck() ? -SearchEngine.mateScore : count == 0 ? 0 : Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                board.makeMove(moves[i]);
+                int score = tablebase.probe(board);
+                board.unmakeMove();
+                assertNotEquals(Tablebase.unknown, score);
+                expected = Math.max(expected, score > 0 ? -score + 1 : score < 0 ? -score - 1 : 0);
+            }
+            assertEquals(board.toFen(), expected, tablebase.probe(board));
+            if (count > 0) {
+                int best = tablebase.bestMove(board);
+                board.makeMove(best);
+                int score = -tablebase.probe(board);
+                board.unmakeMove();
+                assertEquals(board.toFen(), expected, score > 0 ? score - 1 : score < 0 ? score + 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * @return a random legal position with two kings and one other piece, or null if the squares chosen are not one
+     */
+    private Board randomPosition(Random random, String piece, boolean whiteHasPiece) {
+        char[][] rows = new char[8][8];
+        for (char[] row : rows) {
+            java.util.Arrays.fill(row, '1');
+        }
+        String placed = "Kk" + (whiteHasPiece ? piece : piece.toLowerCase());
+        for (int i = 0; i < placed.length(); i++) {
+            int sq = random.nextInt(64);
+            if (rows[sq / 8][sq % 8] != '1') {
+                return null;
+            }
+            rows[sq / 8][sq % 8] = placed.charAt(i);
+        }
+        StringBuilder fen = new StringBuilder();
+        for (int y = 7; y >= 0; y--) {
+            fen.append(rows[y]).append(y > 0 ? "/" : "");
+        }
+        fen.append(random.nextBoolean() ? " w" : " b").append(" - - 0 1");
+        try {
+            return new Board(fen.toString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Test
+    public void files() throws IOException {
+        Path directory = Files.createTempDirectory("tablebase");
+        try {
+            Tablebase written = new Tablebase(directory);
+            written.generate("KRvK", 1);
+            // Draws, invalid indices, wins in 1-16 and losses in 0-16 moves fit in 6 bits per position.
+            assertEquals(EndgameTable.headerSize + 2 * 10 * 64 * 64 * 6 / 8 + 1, Files.size(directory.resolve("KRvK" + Tablebase.fileSuffix)));
+            Tablebase read = new Tablebase(directory);
+            assertTrue(read.contains("KRvK"));
+            assertFalse(read.contains("KQvK"));
+            Board board = new Board("8/8/8/4k3/8/8/8/R3K3 w - - 0 1");
+            assertEquals(tablebase().probe(board), read.probe(board));
+            assertTrue(read.probe(board) > 0);
+            assertEquals(tablebase().bestMove(board), read.bestMove(board));
+        } finally {
+            for (Path file : Files.newDirectoryStream(directory)) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void searchPlaysTablebaseMoves() throws IOException {
+        SearchEngine engine = new SearchEngine(1, 1);
+        engine.setTablebase(tablebase());
+        Board board = new Board("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1");
+        SearchResult result = engine.search(board, SearchLimits.depth(1), null);
+        assertEquals("b1b8", Move.toString(result.bestMove));
+        assertEquals(0, result.depth);
+        assertEquals(1, result.mateIn());
+        engine.shutdown();
+    }
+}
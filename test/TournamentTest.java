@@ -0,0 +1,108 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TournamentTest {
+
+    /**
+     * @return engines that search to a fixed depth whatever the tournament's limits
+     */
+    private static Tournament.EngineFactory depth(final int depth) {
+        return new Tournament.EngineFactory() {
+            public SearchEngine newEngine() {
+                return new SearchEngine(1, 1) {
+                    public SearchResult search(Board board, SearchLimits limits, SearchListener listener) {
+                        return super.search(board, SearchLimits.depth(depth), listener);
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void statistics() {
+        MatchStatistics statistics = new MatchStatistics();
+        assertEquals(0, statistics.llr(), 0);
+        assertEquals(MatchStatistics.Decision.Continue, statistics.decision());
+        assertEquals(-2.944, statistics.getLowerBound(), 0.001);
+        assertEquals(2.944, statistics.getUpperBound(), 0.001);
+        for (int i = 0; i < 30; i++) {
+            statistics.add(1);
+            statistics.add(0.5);
+            statistics.add(0);
+            statistics.add(1);
+        }
+        assertEquals(120, statistics.getGames());
+        assertEquals(60, statistics.getWins());
+        assertEquals(0.625, statistics.score(), 1e-9);
+        assertEquals(88.7, statistics.elo(), 0.1);
+        assertTrue(statistics.eloMargin() > 40 && statistics.eloMargin() < 80);
+        assertTrue(statistics.llr() > 0);
+        assertEquals(0, MatchStatistics.elo(MatchStatistics.expectedScore(0)), 1e-9);
+        assertEquals(100, MatchStatistics.elo(MatchStatistics.expectedScore(100)), 1e-9);
+        // A wide test decides quickly; a one-sided stream of draws refutes a gain.
+        MatchStatistics wide = new MatchStatistics(0, 200, 0.05, 0.05);
+        for (int i = 0; i < 40 && wide.decision() == MatchStatistics.Decision.Continue; i++) {
+            wide.add(0.5);
+        }
+        assertEquals(MatchStatistics.Decision.AcceptH0, wide.decision());
+        try {
+            statistics.add(0.7);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void strongerEngineWins() {
+        Tournament tournament = new Tournament(depth(3), depth(1), new SearchLimits(), null);
+        tournament.setConcurrency(2);
+        tournament.setMaxPlies(200);
+        final Set<Integer> numbers = Collections.synchronizedSet(new HashSet<Integer>());
+        tournament.setListener(new Tournament.Listener() {
+            public void gameFinished(Tournament.Game game, MatchStatistics statistics) {
+                assertTrue(numbers.add(game.number));
+                assertNotEquals(GameState.Ongoing, game.result);
+                assertFalse(game.timeForfeit);
+                Board board = new Board(game.opening);
+                for (int move : game.moves) {
+                    assertTrue(board.isLegal(move));
+                    board.makeMove(move);
+                }
+            }
+        });
+        MatchStatistics statistics = tournament.run(200, new MatchStatistics(0, 150, 0.05, 0.05));
+        assertEquals(statistics.toString(), MatchStatistics.Decision.AcceptH1, statistics.decision());
+        assertTrue(statistics.getGames() < 200);
+        assertEquals(statistics.getGames(), numbers.size());
+        assertTrue(statistics.toString(), statistics.elo() > 0);
+    }
+
+    @Test
+    public void timeControl() {
+        SearchLimits limits = new SearchLimits();
+        limits.whiteTime = limits.blackTime = 1000;
+        limits.whiteIncrement = limits.blackIncrement = 10;
+        Tournament tournament = new Tournament(depth(2), new Tournament.EngineFactory() {
+            public SearchEngine newEngine() {
+                return new SearchEngine(1, 1);
+            }
+        }, limits, Arrays.asList("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3"));
+        tournament.setConcurrency(1);
+        tournament.setMaxPlies(30);
+        MatchStatistics statistics = tournament.run(2, new MatchStatistics());
+        assertEquals(2, statistics.getGames());
+        try {
+            new Tournament(depth(1), depth(1), limits, Arrays.asList("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TranspositionTableTest {
+    @Test
+    public void storeAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = new Board().getKey();
+        assertEquals(0, table.probe(key));
+        int move = Move.encode(12, 28);
+        table.store(key, move, -1234, 7, TranspositionTable.lowerBound);
+        long data = table.probe(key);
+        assertEquals(move, TranspositionTable.move(data));
+        assertEquals(-1234, TranspositionTable.score(data));
+        assertEquals(7, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.lowerBound, TranspositionTable.bound(data));
+        assertEquals(0, table.probe(key ^ 1));
+        // A result without a move keeps the move already stored for the position.
+        table.store(key, Move.none, 55, 8, TranspositionTable.exact);
+        assertEquals(move, TranspositionTable.move(table.probe(key)));
+        assertEquals(55, TranspositionTable.score(table.probe(key)));
+    }
+
+    @Test
+    public void concurrentWriters() throws InterruptedException {
+        final TranspositionTable table = new TranspositionTable(1);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int score = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (long key = 0; key < 200000; key++) {
+                        table.store(key * 0x9E3779B97F4A7C15L, Move.none, score, (int) (key % 64), TranspositionTable.exact);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Every entry that reads as a hit must be one a thread actually wrote for that key.
+        for (long key = 0; key < 200000; key++) {
+            long data = table.probe(key * 0x9E3779B97F4A7C15L);
+            if (data != 0) {
+                assertEquals(key % 64, TranspositionTable.depth(data));
+                assertTrue(TranspositionTable.score(data) >= 0 && TranspositionTable.score(data) < threads.length);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class UciFrontEndTest {
+
+    /**
+     * Runs a front end on its own thread, talking to it through pipes as a GUI would.
+     */
+    private static class Gui {
+        final PrintWriter out;
+        final BufferedReader in;
+        final Thread thread;
+
+        Gui() throws IOException {
+            PipedOutputStream commands = new PipedOutputStream();
+            final PipedInputStream engineIn = new PipedInputStream(commands, 1 << 16);
+            final PipedOutputStream engineOut = new PipedOutputStream();
+            in = new BufferedReader(new InputStreamReader(new PipedInputStream(engineOut, 1 << 16), StandardCharsets.US_ASCII));
+            out = new PrintWriter(commands, true);
+            thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        new UciFrontEnd(engineIn, engineOut).run();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            thread.start();
+        }
+
+        /**
+         * @return the first line starting with the prefix, skipping the lines before it
+         */
+        String waitFor(String prefix) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(prefix)) {
+                    return line;
+                }
+            }
+            throw new AssertionError("No line starting with " + prefix);
+        }
+
+        void quit() throws InterruptedException {
+            out.println("quit");
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    @Test
+    public void handshakeAndSearch() throws IOException, InterruptedException {
+        Gui gui = new Gui();
+        gui.out.println("uci");
+        assertTrue(gui.in.readLine().startsWith("id name "));
+        assertEquals("option name Hash type spin default 16 min 1 max 4096", gui.waitFor("option name Hash"));
+        gui.waitFor("uciok");
+        gui.out.println("setoption name Hash value 4");
+        gui.out.println("setoption name Threads value 2");
+        gui.out.println("ucinewgame");
+        gui.out.println("isready");
+        assertEquals("readyok", gui.in.readLine());
+        // Later position commands extend the earlier one, so only the new moves are played.
+        gui.out.println("position startpos moves f2f3");
+        gui.out.println("position startpos moves f2f3 e7e5 g2g4");
+        gui.out.println("go depth 3");
+        assertTrue(gui.waitFor("info depth 1 ").contains(" pv "));
+        assertTrue(gui.waitFor("info depth 2 ").startsWith("info depth 2 score mate 1 nodes "));
+        assertEquals("bestmove d8h4", gui.waitFor("bestmove"));
+        gui.out.println("position fen 4k3/1P6/8/8/8/8/8/4K3 w - - 0 1 moves b7b8n e8e7");
+        gui.out.println("go depth 1");
+        assertTrue(gui.waitFor("bestmove").startsWith("bestmove "));
+        gui.out.println("position startpos moves e2e5");
+        gui.waitFor("info string illegal move e2e5");
+        gui.quit();
+    }
+
+    @Test
+    public void stopAndPonder() throws IOException, InterruptedException {
+        Gui gui = new Gui();
+        gui.out.println("position startpos moves e2e4");
+        gui.out.println("go infinite");
+        gui.waitFor("info depth 2 ");
+        gui.out.println("isready"); // answered while the search runs
+        assertEquals("readyok", gui.waitFor("readyok"));
+        long start = System.nanoTime();
+        gui.out.println("stop");
+        assertTrue(gui.waitFor("bestmove ").matches("bestmove [a-h][1-8][a-h][1-8]( ponder [a-h][1-8][a-h][1-8])?"));
+        assertTrue((System.nanoTime() - start) / 1000000 < 1000);
+        // A ponder search goes on until "ponderhit", then keeps to the clock.
+        gui.out.println("go ponder wtime 200 btime 200");
+        gui.waitFor("info depth 1 ");
+        gui.out.println("ponderhit");
+        gui.waitFor("bestmove ");
+        // A stop that comes straight after go, before the search has started, is not lost.
+        gui.out.println("go infinite");
+        gui.out.println("stop");
+        gui.waitFor("bestmove ");
+        // A new position and search without "stop" end the running search instead of waiting for it.
+        gui.out.println("go infinite");
+        gui.waitFor("info depth 1 ");
+        gui.out.println("position startpos moves e2e4 e7e5");
+        gui.waitFor("bestmove ");
+        gui.out.println("go depth 1");
+        gui.waitFor("bestmove ");
+        // Quitting during a search still sends its best move.
+        gui.out.println("go infinite");
+        gui.quit();
+        assertTrue(gui.waitFor("bestmove ").startsWith("bestmove "));
+    }
+}
@@ -0,0 +1,60 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * NnueKernels on the CPU's widest SIMD registers, through the incubating Vector API. Kept in its own source folder
+ * because it needs the jdk.incubator.vector module, which javac and java only see when given
+ * --add-modules jdk.incubator.vector; NnueKernels finds this class by name and falls back to plain loops without it.
+ * Compile it against the other classes with e.g.
+ * javac --add-modules jdk.incubator.vector -cp out/production/chess++ -d out/production/chess++ vector/*.java
+ */
+final class VectorNnueKernels extends NnueKernels {
+
+    private static final VectorSpecies<Short> shorts = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> ints = IntVector.SPECIES_PREFERRED; // half as many lanes, as wide
+
+    boolean isVectorized() {
+        return true;
+    }
+
+    void add(short[] sums, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = shorts.loopBound(sums.length); i < bound; i += shorts.length()) {
+            ShortVector.fromArray(shorts, sums, i).add(ShortVector.fromArray(shorts, weights, offset + i)).intoArray(sums, i);
+        }
+        for (; i < sums.length; i++) {
+            sums[i] += weights[offset + i];
+        }
+    }
+
+    void subtract(short[] sums, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = shorts.loopBound(sums.length); i < bound; i += shorts.length()) {
+            ShortVector.fromArray(shorts, sums, i).sub(ShortVector.fromArray(shorts, weights, offset + i)).intoArray(sums, i);
+        }
+        for (; i < sums.length; i++) {
+            sums[i] -= weights[offset + i];
+        }
+    }
+
+    int forward(short[] sums, short[] weights, int offset) {
+        ShortVector zero = ShortVector.zero(shorts);
+        ShortVector limit = ShortVector.broadcast(shorts, (short) Network.activationLimit);
+        IntVector total = IntVector.zero(ints);
+        int i = 0;
+        for (int bound = shorts.loopBound(sums.length); i < bound; i += shorts.length()) {
+            // A clipped sum times a byte-sized weight fits in a short; the products are widened before adding up.
+            ShortVector products = ShortVector.fromArray(shorts, sums, i).max(zero).min(limit)
+                    .mul(ShortVector.fromArray(shorts, weights, offset + i));
+            total = total.add(products.convertShape(VectorOperators.S2I, ints, 0))
+                    .add(products.convertShape(VectorOperators.S2I, ints, 1));
+        }
+        int sum = total.reduceLanes(VectorOperators.ADD);
+        for (; i < sums.length; i++) {
+            sum += Math.max(0, Math.min(Network.activationLimit, sums[i])) * weights[offset + i];
+        }
+        return sum;
+    }
+}